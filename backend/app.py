@@ -19,6 +19,7 @@ sys.path.append(os.path.abspath(os.path.join(os.path.dirname(__file__), '..')))
 from backend.config import DB_FILE
 from backend.extensions import db
 from backend.logging_config import logger_backend
+from backend.compression import init_compression
 
 # Import Blueprints
 from backend.routes.auth import auth_bp
@@ -53,6 +54,9 @@ def create_app():
     
     # Init Extensions
     db.init_app(app)
+
+    # Compresión de las respuestas grandes (JSON, lista de personajes)
+    init_compression(app)
     
     # Register Blueprints
     app.register_blueprint(auth_bp)
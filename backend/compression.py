@@ -0,0 +1,62 @@
+"""
+Compresión gzip/deflate de las respuestas grandes.
+Se aplica a las respuestas de datos (JSON y la lista de personajes en binario)
+cuando el cliente la acepta; las imágenes ya van comprimidas y se envían tal cual.
+
+Autores: Xiker, Gaizka, Diego
+"""
+import gzip
+import zlib
+from flask import request
+from backend.logging_config import logger_backend
+
+# Por debajo de este tamaño la compresión no compensa
+MIN_SIZE = 1024
+COMPRESS_LEVEL = 6
+COMPRESSIBLE_MIMETYPES = {'application/json', 'application/x-anuario-characters'}
+
+
+def _choose_encoding():
+    """gzip o deflate según Accept-Encoding (gzip si acepta ambos), o None."""
+    accepted = request.accept_encodings
+    if accepted['gzip'] and accepted['gzip'] >= accepted['deflate']:
+        return 'gzip'
+    if accepted['deflate']:
+        return 'deflate'
+    return None
+
+
+def compress_response(response):
+    """Hook after_request: comprime la respuesta si procede."""
+    if (response.status_code != 200
+            or response.direct_passthrough
+            or response.is_streamed
+            or 'Content-Encoding' in response.headers
+            or response.mimetype not in COMPRESSIBLE_MIMETYPES):
+        return response
+
+    encoding = _choose_encoding()
+    data = response.get_data()
+    if encoding is None or len(data) < MIN_SIZE:
+        return response
+
+    if encoding == 'gzip':
+        compressed = gzip.compress(data, compresslevel=COMPRESS_LEVEL)
+    else:
+        compressed = zlib.compress(data, COMPRESS_LEVEL)
+
+    response.set_data(compressed)
+    response.headers['Content-Encoding'] = encoding
+    response.vary.add('Accept-Encoding')
+    # El ETag describe el contenido sin comprimir: pasa a ser débil
+    etag, weak = response.get_etag()
+    if etag and not weak:
+        response.set_etag(etag, weak=True)
+
+    logger_backend.debug(f"{request.method} {request.path}: {len(data)} bytes -> "
+                         f"{len(compressed)} bytes ({encoding})")
+    return response
+
+
+def init_compression(app):
+    app.after_request(compress_response)
@@ -4,8 +4,8 @@ Gestiona sincronizaciones, importaciones y tareas en segundo plano.
 
 Autor: Gaizka, Diego, Xiker
 """
-from flask import Blueprint, jsonify, request
-import threading
+from flask import Blueprint, jsonify, request, Response, stream_with_context
+import json
 import os
 from backend.services.ImageService import ImageService
 from backend.services.sync_mysql import sync_sqlite_to_mysql, sync_mysql_to_sqlite
@@ -16,22 +16,58 @@ from backend.logging_config import logger_backend
 admin_bp = Blueprint('admin', __name__)
 personaje_service = PersonajeService(DB_FILE)
 
+# Segundos sin cambios tras los que se envía un comentario para mantener viva
+# (y comprobar) la conexión de eventos
+SSE_KEEPALIVE = 15
+
 @admin_bp.route('/admin/sync-images', methods=['POST'])
 def trigger_image_sync():
-    thread = threading.Thread(target=ImageService.cache_all_images_background)
-    thread.daemon = True
-    thread.start()
+    ImageService.start_background_sync()
     return jsonify({"message": "Background image sync started", "status": "started"})
 
 @admin_bp.route('/admin/sync-images/status', methods=['GET'])
 def get_image_sync_status():
     return jsonify(ImageService.sync_status)
 
+@admin_bp.route('/admin/sync-images/events', methods=['GET'])
+def stream_image_sync_status():
+    """
+    Progreso de la descarga de imágenes como Server-Sent Events: un evento
+    'progress' con el estado actual y otro cada vez que cambia (los cambios
+    seguidos se agrupan en uno), y un evento 'done' al terminar, tras el cual se
+    cierra el flujo. Si no hay ninguna descarga en curso, se envía 'done' al
+    momento. Cada evento lleva en 'completed' los ids cuya imagen se ha
+    guardado desde el evento anterior.
+    """
+    def events():
+        version = -1
+        completed_from = 0
+        while True:
+            new_version, status, completed, completed_from = ImageService.wait_sync_status(
+                version, SSE_KEEPALIVE, completed_from)
+            if new_version == version:
+                yield ": keepalive\n\n"
+                continue
+            version = new_version
+            status['completed'] = completed
+            data = json.dumps(status)
+            if not status["running"]:
+                yield f"event: done\ndata: {data}\n\n"
+                return
+            yield f"event: progress\ndata: {data}\n\n"
+
+    response = Response(stream_with_context(events()), mimetype='text/event-stream')
+    response.headers['Cache-Control'] = 'no-cache'
+    response.headers['X-Accel-Buffering'] = 'no'
+    return response
+
 @admin_bp.route('/admin/sync-mysql', methods=['POST'])
 def sync_mysql_push():
     try:
-        sync_sqlite_to_mysql()
-        return jsonify({"success": True, "message": "Push to MySQL completed sucessfully"})
+        result = sync_sqlite_to_mysql()
+        if result is None:
+            return jsonify({"success": False, "error": "Push to MySQL failed"}), 502
+        return jsonify({"success": True, "message": "Push to MySQL completed sucessfully", **result})
     except Exception as e:
         return jsonify({"error": str(e)}), 500
 
@@ -48,9 +84,7 @@ def sync_mysql_pull():
             logger_backend.error(f"Error regenerating export files after sync: {ex}")
         
         # Auto-trigger background image sync to ensure offline availability
-        thread = threading.Thread(target=ImageService.cache_all_images_background)
-        thread.daemon = True
-        thread.start()
+        ImageService.start_background_sync()
         
         return jsonify({"success": True, "message": "Pull from MySQL completed. Export files updated. Image caching started in background."})
     except Exception as e:
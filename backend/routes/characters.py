@@ -8,11 +8,16 @@ Autores: Gaizka, Diego, Xiker
 from flask import Blueprint, request, jsonify, Response
 import requests
 import hashlib
+import struct
+import base64
+import json
 from backend.models.Favorite import Favorite
 from backend.models.Character import Character
 from backend.extensions import db
 from backend.services.PersonajeService import PersonajeService
 from backend.services.ImageService import ImageService
+from backend.services.ChangeLogService import ChangeLogService
+from backend.services.CharacterCodec import CharacterCodec, MIMETYPE as CHARACTERS_MIMETYPE
 from backend.config import POTTERDB_API, DB_FILE
 from backend.logging_config import logger_backend
 
@@ -45,6 +50,86 @@ def generate_id(name, slug=None):
         
     return candidate
 
+JSON_FIELDS = ['alias_names', 'family_member', 'jobs', 'romances', 'titles', 'wand']
+
+def serialize_character(char, is_fav):
+    """Convierte un Character (SQLAlchemy) en el diccionario que recibe el frontend."""
+    import json
+    char_dict = {c.name: getattr(char, c.name) for c in char.__table__.columns}
+    if 'image_blob' in char_dict: del char_dict['image_blob']
+    char_dict['image'] = f"http://localhost:8000/characters/{char.id}/image"
+    
+    # Parse JSON fields
+    for field in JSON_FIELDS:
+        val = char_dict.get(field)
+        try:
+            char_dict[field] = json.loads(val) if val else []
+        except:
+            char_dict[field] = []
+    
+    char_dict['is_favorite'] = bool(is_fav)
+    return char_dict
+
+def query_characters(ids=None):
+    """Personajes serializados con su flag de favorito (opcionalmente solo `ids`)."""
+    query = db.session.query(Character, Favorite.is_favorite).\
+        outerjoin(Favorite, Character.id == Favorite.character_id)
+    if ids is not None:
+        query = query.filter(Character.id.in_(ids))
+    return [serialize_character(char, is_fav) for char, is_fav in query.all()]
+
+# Campos de la vista resumida: los que usan la rejilla y los filtros (el estado
+# se deduce de `died`). El resto se pide personaje a personaje al abrir la ficha.
+SUMMARY_FIELDS = ['id', 'name', 'house', 'died', 'patronus']
+
+def query_character_summaries():
+    """Como query_characters, pero solo con SUMMARY_FIELDS (sin leer el resto de columnas)."""
+    columns = [getattr(Character, field) for field in SUMMARY_FIELDS]
+    query = db.session.query(*columns, Favorite.is_favorite).\
+        outerjoin(Favorite, Character.id == Favorite.character_id)
+    summaries = []
+    for row in query.all():
+        summary = dict(zip(SUMMARY_FIELDS, row[:-1]))
+        summary['image'] = f"http://localhost:8000/characters/{summary['id']}/image"
+        summary['is_favorite'] = bool(row[-1])
+        summaries.append(summary)
+    return summaries
+
+def list_characters():
+    """Lista completa o resumida según el parámetro `view` (full|summary)."""
+    if request.args.get('view') == 'summary':
+        return query_character_summaries()
+    return query_characters()
+
+def conditional_json(data, revision=None):
+    """
+    Serializa la respuesta con un ETag (hash del cuerpo) y la hace condicional:
+    si el cliente envía un If-None-Match que coincide, se responde 304 sin cuerpo.
+    La revisión del change log (si se indica) viaja en la cabecera X-Revision.
+    """
+    resp = jsonify(data)
+    if revision is not None:
+        resp.headers['X-Revision'] = str(revision)
+    resp.add_etag()
+    return resp.make_conditional(request)
+
+def conditional_characters(characters, revision=None):
+    """
+    Como conditional_json, pero negociando el formato con la cabecera Accept:
+    los clientes que aceptan CHARACTERS_MIMETYPE reciben la lista codificada en
+    binario (ver CharacterCodec); el resto, JSON.
+    """
+    if request.accept_mimetypes.best_match(['application/json', CHARACTERS_MIMETYPE]) != CHARACTERS_MIMETYPE:
+        resp = conditional_json(characters, revision)
+    else:
+        resp = Response(CharacterCodec.encode(characters, JSON_FIELDS), mimetype=CHARACTERS_MIMETYPE)
+        if revision is not None:
+            resp.headers['X-Revision'] = str(revision)
+        resp.add_etag()
+        resp = resp.make_conditional(request)
+    resp.vary.add('Accept')
+    return resp
+
 @characters_bp.route('/characters', methods=['GET'])
 def get_characters():
     try:
@@ -66,32 +151,15 @@ def get_characters():
             # Let's reproduce THAT logic here using SQLAlchemy for better consistency with Models.
             
             # REPLACING DAO CALL WITH SQLALCHEMY JOIN LOGIC FROM APP.PY
-            results = db.session.query(Character, Favorite.is_favorite).\
-                outerjoin(Favorite, Character.id == Favorite.character_id).all()
-            
-            characters = []
-            for char, is_fav in results:
-                char_dict = {c.name: getattr(char, c.name) for c in char.__table__.columns}
-                if 'image_blob' in char_dict: del char_dict['image_blob']
-                char_dict['image'] = f"http://localhost:8000/characters/{char.id}/image"
-                
-                # Parse JSON fields
-                import json
-                json_fields = ['alias_names', 'family_member', 'jobs', 'romances', 'titles', 'wand']
-                for field in json_fields:
-                    val = char_dict.get(field)
-                    try:
-                        char_dict[field] = json.loads(val) if val else []
-                    except:
-                        char_dict[field] = []
-                
-                char_dict['is_favorite'] = bool(is_fav)
-                characters.append(char_dict)
+            # La revisión se lee antes de la consulta: como mucho el cliente
+            # recibirá de nuevo algún cambio ya incluido, nunca perderá uno
+            revision = ChangeLogService.current_revision()
+            characters = list_characters()
                 
             if request.args.get('filter') == 'favorites':
                 characters = [c for c in characters if c['is_favorite']]
                 
-            return jsonify(characters)
+            return conditional_characters(characters, revision)
         
         # If empty, fetch from API (Logic copied from app.py)
         logger_backend.info("⟳ Local DB empty. Fetching fresh data from PotterDB API...")
@@ -162,6 +230,8 @@ def get_characters():
                 else:
                     if hasattr(existing, k):
                         setattr(existing, k, v)
+        # Carga masiva: los clientes con una revisión anterior deben recargar todo
+        ChangeLogService.record_in_session(db.session, None, ChangeLogService.OP_RESET)
         db.session.commit()
         
         # Trigger exports
@@ -178,33 +248,99 @@ def get_characters():
         # But db.session.commit() was called.
         
         # Let's return the recently saved list directly formatted.
-        results = db.session.query(Character, Favorite.is_favorite).\
-                outerjoin(Favorite, Character.id == Favorite.character_id).all()
-            
-        characters = []
-        for char, is_fav in results:
-            char_dict = {c.name: getattr(char, c.name) for c in char.__table__.columns}
-            if 'image_blob' in char_dict: del char_dict['image_blob']
-            char_dict['image'] = f"http://localhost:8000/characters/{char.id}/image"
-            
-            import json
-            json_fields = ['alias_names', 'family_member', 'jobs', 'romances', 'titles', 'wand']
-            for field in json_fields:
-                val = char_dict.get(field)
-                try:
-                    char_dict[field] = json.loads(val) if val else []
-                except:
-                    char_dict[field] = []
+        revision = ChangeLogService.current_revision()
+        characters = list_characters()
             
-            char_dict['is_favorite'] = bool(is_fav)
-            characters.append(char_dict)
-            
-        return jsonify(characters)
+        return conditional_characters(characters, revision)
         
     except Exception as e:
         logger_backend.error(f"Error in get_characters: {str(e)}", exc_info=True)
         return jsonify({"error": str(e)}), 500
 
+@characters_bp.route('/characters/changes', methods=['GET'])
+def get_character_changes():
+    """
+    Cambios posteriores a la revisión `since`: personajes modificados o creados
+    (upserts) e ids eliminados. Si `reset` es true, el cliente debe recargar la
+    lista completa.
+    """
+    try:
+        since = request.args.get('since', type=int)
+        if since is None: return jsonify({"error": "Missing 'since' revision"}), 400
+        
+        revision, reset, upsert_ids, deleted = ChangeLogService.changes_since(since)
+        upserts = query_characters(upsert_ids) if upsert_ids and not reset else []
+        
+        logger_backend.info(f"Changes since {since}: {len(upserts)} upserts, {len(deleted)} deleted, reset={reset}")
+        return jsonify({
+            "revision": revision,
+            "reset": reset,
+            "upserts": upserts,
+            "deleted": deleted
+        })
+    except Exception as e:
+        logger_backend.error(f"Error in get_character_changes: {str(e)}", exc_info=True)
+        return jsonify({"error": str(e)}), 500
+
+QUERY_DEFAULT_SIZE = 50
+
+def encode_cursor(key):
+    """Cursor opaco para el cliente a partir de la clave [orden, id] del DAO."""
+    if key is None: return None
+    return base64.urlsafe_b64encode(json.dumps(key).encode('utf-8')).decode('ascii')
+
+def decode_cursor(cursor):
+    try:
+        key = json.loads(base64.urlsafe_b64decode(cursor.encode('ascii')).decode('utf-8'))
+    except Exception:
+        raise ValueError("Invalid cursor")
+    if not isinstance(key, list) or len(key) != 2:
+        raise ValueError("Invalid cursor")
+    return key
+
+@characters_bp.route('/characters/query', methods=['GET'])
+def query_characters_page():
+    """
+    Página de personajes filtrada y ordenada en el servidor, para clientes que
+    no descargan la lista completa.
+
+    Parámetros: size, sort (name|house, '-' para descendente), cursor (el
+    next_cursor de la página anterior) o page (1..n), house, status
+    (alive|deceased|unknown), q (nombre), patronus y favorites=true.
+    La primera página incluye además `total` y `houses`.
+    """
+    try:
+        size = request.args.get('size', QUERY_DEFAULT_SIZE, type=int)
+        cursor = request.args.get('cursor')
+        page = request.args.get('page', 1, type=int)
+        after = decode_cursor(cursor) if cursor else None
+        offset = 0 if after else max(0, page - 1) * max(1, size)
+
+        result = personaje_service.dao.consultar_personajes(
+            size=size,
+            sort=request.args.get('sort', 'name'),
+            after=after,
+            offset=offset,
+            house=request.args.get('house') or None,
+            status=request.args.get('status') or None,
+            q=request.args.get('q') or None,
+            patronus=request.args.get('patronus') or None,
+            favorites=request.args.get('favorites') == 'true',
+            with_total=after is None and offset == 0)
+
+        for item in result['items']:
+            item['image'] = f"http://localhost:8000/characters/{item['id']}/image"
+        body = {"items": result['items'], "next_cursor": encode_cursor(result['next'])}
+        if 'total' in result:
+            body['total'] = result['total']
+            body['houses'] = result['houses']
+        return jsonify(body)
+    except ValueError as e:
+        return jsonify({"error": str(e)}), 400
+    except Exception as e:
+        logger_backend.error(f"Error in query_characters_page: {str(e)}", exc_info=True)
+        return jsonify({"error": str(e)}), 500
+
 @characters_bp.route('/characters', methods=['POST'])
 def add_character():
     try:
@@ -225,6 +361,32 @@ def add_character():
     except Exception as e:
         return jsonify({"error": str(e)}), 500
 
+# Máximo de cambios por petición a /characters/batch
+BATCH_MAX_MUTATIONS = 500
+
+@characters_bp.route('/characters/batch', methods=['POST'])
+def apply_character_batch():
+    """
+    Aplica varios cambios en una sola petición y transacción.
+    Cuerpo: {"mutations": [{"op": "edit", "id", "data": {...}},
+                           {"op": "delete", "id"},
+                           {"op": "favorite", "id", "is_favorite": bool}, ...]}
+    Devuelve {"results": [{"id", "op", "status"}, ...]} en el mismo orden; un
+    cambio rechazado ("not_found", "invalid", "error") no impide los demás.
+    """
+    data = request.get_json(silent=True)
+    mutations = data.get('mutations') if isinstance(data, dict) else None
+    if not isinstance(mutations, list) or not all(isinstance(m, dict) for m in mutations):
+        return jsonify({"error": "Expected a list of mutations"}), 400
+    if len(mutations) > BATCH_MAX_MUTATIONS:
+        return jsonify({"error": f"Too many mutations (max {BATCH_MAX_MUTATIONS})"}), 400
+    try:
+        results = personaje_service.aplicar_mutaciones(mutations)
+        return jsonify({"results": results})
+    except Exception as e:
+        logger_backend.error(f"Error applying character batch: {str(e)}", exc_info=True)
+        return jsonify({"error": str(e)}), 500
+
 @characters_bp.route('/characters/<character_id>/upload-image', methods=['POST'])
 def upload_character_image(character_id):
     try:
@@ -249,6 +411,54 @@ def upload_character_image(character_id):
         logger_backend.error(f"Upload error: {e}")
         return jsonify({"error": str(e)}), 500
 
+# Imágenes en bloque: tramas con prefijo de longitud (ver get_character_images)
+BULK_IMAGES_MIMETYPE = 'application/x-anuario-images'
+BULK_IMAGES_MAX_IDS = 200
+BULK_IMAGE_OK = 0
+BULK_IMAGE_MISSING = 1
+
+def encode_image_frame(character_id, status, data=b''):
+    """u16 longitud del id | id (UTF-8) | u8 estado | u32 longitud | bytes (big-endian)."""
+    id_bytes = character_id.encode('utf-8')
+    return struct.pack('>H', len(id_bytes)) + id_bytes + struct.pack('>BI', status, len(data)) + data
+
+@characters_bp.route('/characters/images', methods=['GET'])
+def get_character_images():
+    """
+    Devuelve varias imágenes en una sola respuesta, una trama por id y en el
+    mismo orden en que se pidieron.
+    Parámetros: ids (separados por comas, máx. 200) y size = thumb | full.
+    Si un personaje no existe o aún no tiene la imagen guardada, su trama lleva
+    el estado 1 y el cliente la pide por separado a /characters/<id>/image.
+    """
+    ids = list(dict.fromkeys(i for i in request.args.get('ids', '').split(',') if i))
+    size = request.args.get('size', 'thumb')
+    if not ids:
+        return jsonify({'error': 'Missing ids'}), 400
+    if len(ids) > BULK_IMAGES_MAX_IDS:
+        return jsonify({'error': f'Too many ids (max {BULK_IMAGES_MAX_IDS})'}), 400
+    if size not in ('thumb', 'full'):
+        return jsonify({'error': 'Invalid size'}), 400
+
+    try:
+        if size == 'thumb':
+            # Miniaturas ya guardadas (solo se generan las que faltan)
+            images = ImageService.get_thumbnails_bulk(ids)
+        else:
+            images = {cid: row[0] for cid, row in ImageService.get_images_bulk(ids).items()}
+    except Exception as e:
+        return jsonify({'error': str(e)}), 500
+
+    def generate():
+        for character_id in ids:
+            blob = images.get(character_id)
+            if not blob:
+                yield encode_image_frame(character_id, BULK_IMAGE_MISSING)
+                continue
+            yield encode_image_frame(character_id, BULK_IMAGE_OK, blob)
+
+    return Response(generate(), mimetype=BULK_IMAGES_MIMETYPE)
+
 @characters_bp.route('/characters/<character_id>/image', methods=['GET'])
 def get_character_image(character_id):
     try:
@@ -289,11 +499,88 @@ def toggle_favorite(character_id):
             if fav:
                 db.session.delete(fav)
         
+        # En la misma transacción que el favorito
+        ChangeLogService.record_in_session(db.session, character_id, ChangeLogService.OP_UPSERT)
         db.session.commit()
         return jsonify({'success': True, 'character_id': character_id, 'is_favorite': new_status})
     except Exception as e:
+        db.session.rollback()
         return jsonify({'error': str(e)}), 500
 
+# Máximo de ids por petición a /characters/favorites (el cliente manda toda la
+# selección en una sola, que se aplica entera o no se aplica): tantos como
+# personajes llega a tener cargados el cliente. Y tamaño de cada IN (...)
+FAVORITES_MAX_IDS = 20000
+FAVORITES_QUERY_CHUNK = 500
+
+@characters_bp.route('/characters/favorites', methods=['POST'])
+def set_favorites():
+    """
+    Marca o desmarca como favoritos varios personajes en una sola transacción.
+    Los ids que no existen en la tabla de personajes no se tocan.
+    Cuerpo: {"ids": [...], "is_favorite": bool}
+    Devuelve {"success", "is_favorite", "changed": nº de personajes cuyo estado
+    cambió, "unknown": ids que no existen}.
+    """
+    data = request.get_json(silent=True)
+    ids = data.get('ids') if isinstance(data, dict) else None
+    new_status = data.get('is_favorite') if isinstance(data, dict) else None
+    if not isinstance(ids, list) or not all(isinstance(i, str) and i for i in ids) \
+            or not isinstance(new_status, bool):
+        return jsonify({"error": "Expected a list of ids and is_favorite"}), 400
+    if len(ids) > FAVORITES_MAX_IDS:
+        return jsonify({"error": f"Too many ids (max {FAVORITES_MAX_IDS})"}), 400
+    try:
+        ids = list(dict.fromkeys(ids))  # Sin repetidos, en el mismo orden
+        known = set()
+        existing = {}
+        for start in range(0, len(ids), FAVORITES_QUERY_CHUNK):
+            chunk = ids[start:start + FAVORITES_QUERY_CHUNK]
+            known.update(row[0] for row in db.session.query(Character.id).filter(Character.id.in_(chunk)))
+            for fav in Favorite.query.filter(Favorite.character_id.in_(chunk)).all():
+                existing[fav.character_id] = fav
+        unknown = [i for i in ids if i not in known]
+        ids = [i for i in ids if i in known]
+
+        changed = []
+        for character_id in ids:
+            fav = existing.get(character_id)
+            if new_status:
+                if not fav:
+                    db.session.add(Favorite(character_id=character_id, is_favorite=True))
+                    changed.append(character_id)
+                elif not fav.is_favorite:
+                    fav.is_favorite = True
+                    changed.append(character_id)
+            elif fav:
+                if fav.is_favorite:
+                    changed.append(character_id)
+                db.session.delete(fav)
+
+        # En la misma transacción que los favoritos
+        ChangeLogService.record_many_in_session(db.session, changed, ChangeLogService.OP_UPSERT)
+        db.session.commit()
+        logger_backend.info(f"Favorites set to {new_status} for {len(ids)} characters "
+                            f"({len(changed)} changed, {len(unknown)} unknown ids)")
+        return jsonify({'success': True, 'is_favorite': new_status, 'changed': len(changed),
+                        'unknown': unknown})
+    except Exception as e:
+        db.session.rollback()
+        logger_backend.error(f"Error setting favorites: {str(e)}", exc_info=True)
+        return jsonify({'error': str(e)}), 500
+
+@characters_bp.route('/characters/<character_id>', methods=['GET'])
+def get_character(character_id):
+    """Ficha completa de un personaje (la lista resumida no incluye los detalles)."""
+    try:
+        characters = query_characters([character_id])
+        if not characters:
+            return jsonify({"error": "Character not found"}), 404
+        return conditional_json(characters[0])
+    except Exception as e:
+        logger_backend.error(f"Error getting character {character_id}: {str(e)}", exc_info=True)
+        return jsonify({"error": str(e)}), 500
+
 @characters_bp.route('/characters/<character_id>', methods=['PUT', 'DELETE'])
 def manage_character(character_id):
     if request.method == 'PUT':
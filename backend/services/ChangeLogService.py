@@ -0,0 +1,139 @@
+"""
+Servicio de registro de cambios (change log).
+Cada alta, edición, borrado o cambio de favorito de un personaje incrementa una
+revisión global. Los clientes piden "cambios desde la revisión N" y reciben
+solo los personajes afectados en lugar de la lista completa.
+
+Cada cambio se registra en la misma transacción que lo produce (cursor sqlite3
+o sesión de SQLAlchemy): o se guardan los dos o ninguno. Solo se conservan las
+últimas CHANGE_LOG_RETAINED revisiones; a un cliente más atrasado se le pide
+que recargue todo.
+
+Autores: Gaizka, Xiker, Diego
+"""
+import sqlite3
+from datetime import datetime
+from sqlalchemy import text
+from backend.config import DB_FILE
+
+
+# Revisiones que se conservan en el change log (las anteriores se borran)
+CHANGE_LOG_RETAINED = 20000
+
+_CREATE_SQL = """
+CREATE TABLE IF NOT EXISTS change_log (
+    revision INTEGER PRIMARY KEY AUTOINCREMENT,
+    character_id VARCHAR(255),
+    op VARCHAR(10) NOT NULL,
+    changed_at TEXT
+)
+"""
+_INSERT_SQL = "INSERT INTO change_log (character_id, op, changed_at) VALUES (:character_id, :op, :changed_at)"
+# AUTOINCREMENT garantiza que las revisiones borradas no se reutilizan
+_COMPACT_SQL = "DELETE FROM change_log WHERE revision <= (SELECT MAX(revision) FROM change_log) - :retained"
+
+
+class ChangeLogService:
+    OP_UPSERT = 'upsert'
+    OP_DELETE = 'delete'
+    # Cambio masivo (importación inicial, etc.): el cliente debe recargar todo
+    OP_RESET = 'reset'
+
+    @staticmethod
+    def ensure_table(cursor):
+        cursor.execute(_CREATE_SQL)
+
+    @staticmethod
+    def record(character_id, op, cursor):
+        """
+        Registra un cambio dentro de la transacción del cursor sqlite3 (el
+        llamador hace el commit).
+        """
+        ChangeLogService.ensure_table(cursor)
+        cursor.execute(_INSERT_SQL, ChangeLogService._row(character_id, op))
+        cursor.execute(_COMPACT_SQL, {'retained': CHANGE_LOG_RETAINED})
+
+    @staticmethod
+    def record_in_session(session, character_id, op):
+        """
+        Registra un cambio dentro de la transacción de la sesión de SQLAlchemy,
+        antes de su commit.
+        """
+        session.execute(text(_CREATE_SQL))
+        session.execute(text(_INSERT_SQL), ChangeLogService._row(character_id, op))
+        session.execute(text(_COMPACT_SQL), {'retained': CHANGE_LOG_RETAINED})
+
+    @staticmethod
+    def record_many_in_session(session, character_ids, op):
+        """
+        Registra el mismo cambio para varios personajes (un solo executemany)
+        dentro de la transacción de la sesión de SQLAlchemy, antes de su commit.
+        """
+        if not character_ids:
+            return
+        session.execute(text(_CREATE_SQL))
+        session.execute(text(_INSERT_SQL), [ChangeLogService._row(cid, op) for cid in character_ids])
+        session.execute(text(_COMPACT_SQL), {'retained': CHANGE_LOG_RETAINED})
+
+    @staticmethod
+    def current_revision(cursor=None):
+        own_conn = None
+        if cursor is None:
+            own_conn = sqlite3.connect(DB_FILE)
+            cursor = own_conn.cursor()
+        try:
+            ChangeLogService.ensure_table(cursor)
+            cursor.execute("SELECT COALESCE(MAX(revision), 0) FROM change_log")
+            return cursor.fetchone()[0]
+        finally:
+            if own_conn: own_conn.close()
+
+    @staticmethod
+    def oldest_retained(cursor):
+        """
+        Revisión más antigua conservada en el change log (1 si no se ha
+        compactado nunca). Quien parta de una revisión anterior a esta menos
+        uno ha perdido cambios.
+        """
+        ChangeLogService.ensure_table(cursor)
+        cursor.execute("SELECT COALESCE(MIN(revision), 1) FROM change_log")
+        return cursor.fetchone()[0]
+
+    @staticmethod
+    def changes_since(since):
+        """
+        Devuelve (revision, reset, upsert_ids, deleted_ids) con los cambios
+        posteriores a `since`. Si un personaje cambió varias veces, solo cuenta
+        la última operación. Si los cambios de después de `since` ya se
+        compactaron, se devuelve reset.
+        """
+        conn = sqlite3.connect(DB_FILE)
+        try:
+            cursor = conn.cursor()
+            revision = ChangeLogService.current_revision(cursor)
+
+            # Una revisión del futuro significa que la base de datos se recreó
+            if since > revision:
+                return revision, True, [], []
+            # Parte de los cambios ya no está en el log
+            if since < ChangeLogService.oldest_retained(cursor) - 1:
+                return revision, True, [], []
+
+            cursor.execute(
+                "SELECT character_id, op FROM change_log WHERE revision > ? ORDER BY revision",
+                (since,))
+            last_op = {}
+            for character_id, op in cursor.fetchall():
+                if op == ChangeLogService.OP_RESET:
+                    return revision, True, [], []
+                last_op[character_id] = op
+
+            upserts = [cid for cid, op in last_op.items() if op == ChangeLogService.OP_UPSERT]
+            deleted = [cid for cid, op in last_op.items() if op == ChangeLogService.OP_DELETE]
+            return revision, False, upserts, deleted
+        finally:
+            conn.close()
+
+    @staticmethod
+    def _row(character_id, op):
+        return {'character_id': character_id, 'op': op, 'changed_at': datetime.now().isoformat()}
@@ -0,0 +1,111 @@
+"""
+Codificación binaria compacta de la lista de personajes.
+Alternativa a JSON para GET /characters cuando el cliente la pide con
+`Accept: application/x-anuario-characters`.
+
+Formato (enteros sin signo como varint LEB128, cadenas como varint + UTF-8):
+    'ANCH' | versión (1 byte)
+    nº de campos | por campo: tipo (1 byte) + nombre
+    plantilla de la URL de imagen ('{id}' se sustituye por el id)
+    nº de cadenas del diccionario | cadenas (la 0 es siempre '')
+    nº de personajes | por personaje y campo, en el orden de la cabecera:
+        cadena -> índice en el diccionario
+        lista  -> nº de elementos + índices
+        bool   -> 1 byte
+
+Los nombres de campo van una sola vez en la cabecera y los valores repetidos
+(casa, especie, género...) una sola vez en el diccionario. La URL de imagen no
+se envía por personaje porque siempre es la del endpoint de imágenes.
+
+Autores: Gaizka, Xiker, Diego
+"""
+import struct
+
+MIMETYPE = 'application/x-anuario-characters'
+MAGIC = b'ANCH'
+VERSION = 1
+
+TYPE_STRING = 0
+TYPE_LIST = 1
+TYPE_BOOL = 2
+
+IMAGE_URL_TEMPLATE = "http://localhost:8000/characters/{id}/image"
+
+
+def _varint(value):
+    out = bytearray()
+    while value >= 0x80:
+        out.append((value & 0x7F) | 0x80)
+        value >>= 7
+    out.append(value)
+    return bytes(out)
+
+
+def _string(text):
+    data = text.encode('utf-8')
+    return _varint(len(data)) + data
+
+
+class CharacterCodec:
+
+    @staticmethod
+    def encode(characters, list_fields):
+        """
+        Codifica personajes ya serializados (los diccionarios que se enviarían en
+        JSON).
+
+        Args:
+            characters: Lista de diccionarios de personaje
+            list_fields: Campos cuyo valor es una lista de cadenas
+
+        Returns:
+            bytes con la lista codificada
+        """
+        fields = []
+        if characters:
+            for name, value in characters[0].items():
+                if name == 'image':
+                    continue
+                if name in list_fields:
+                    fields.append((name, TYPE_LIST))
+                elif isinstance(value, bool):
+                    fields.append((name, TYPE_BOOL))
+                else:
+                    fields.append((name, TYPE_STRING))
+
+        dictionary = {'': 0}
+
+        def index(value):
+            text = '' if value is None else str(value)
+            i = dictionary.get(text)
+            if i is None:
+                i = dictionary[text] = len(dictionary)
+            return _varint(i)
+
+        records = bytearray()
+        for char in characters:
+            for name, kind in fields:
+                value = char.get(name)
+                if kind == TYPE_LIST:
+                    items = value if isinstance(value, list) else []
+                    records += _varint(len(items))
+                    for item in items:
+                        records += index(item)
+                elif kind == TYPE_BOOL:
+                    records.append(1 if value else 0)
+                else:
+                    records += index(value)
+
+        out = bytearray(MAGIC)
+        out += struct.pack('>B', VERSION)
+        out += _varint(len(fields))
+        for name, kind in fields:
+            out += struct.pack('>B', kind)
+            out += _string(name)
+        out += _string(IMAGE_URL_TEMPLATE)
+        out += _varint(len(dictionary))
+        for text in dictionary:  # Los dict conservan el orden de inserción
+            out += _string(text)
+        out += _varint(len(characters))
+        out += records
+        return bytes(out)
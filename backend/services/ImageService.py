@@ -18,9 +18,16 @@ sys.path.append(os.path.abspath(os.path.join(os.path.dirname(__file__), '..')))
 from config import DB_FILE
 
 import concurrent.futures
+import hashlib
+import threading
 import time
 
 class ImageService:
+    # Ancho de las miniaturas (el mismo con el que las muestra el frontend)
+    THUMBNAIL_WIDTH = 320
+    # Máximo de parámetros por consulta IN (límite de SQLite)
+    BULK_QUERY_CHUNK = 500
+
     # Store sync status in memory
     sync_status = {
         "running": False,
@@ -28,6 +35,71 @@ class ImageService:
         "total": 0,
         "errors": 0
     }
+    # Avisa a quien espera cambios del estado (GET /admin/sync-images/events);
+    # la versión aumenta con cada cambio
+    _status_changed = threading.Condition()
+    _status_version = 0
+    # Ids con la imagen ya guardada en la descarga actual. Su posición global
+    # (la de descargas anteriores más la de la lista) nunca retrocede, para que
+    # quien sigue el progreso sepa cuáles le faltan por recibir
+    _completed_ids = []
+    _completed_base = 0
+
+    @staticmethod
+    def reset_sync_status():
+        """Empieza una descarga nueva: contadores a cero y sin ids completados."""
+        with ImageService._status_changed:
+            ImageService._completed_base += len(ImageService._completed_ids)
+            ImageService._completed_ids = []
+            ImageService.sync_status.update(running=True, current=0, total=0, errors=0)
+            ImageService._status_version += 1
+            ImageService._status_changed.notify_all()
+
+    @staticmethod
+    def update_sync_status(completed_id=None, **changes):
+        """
+        Actualiza el estado de la sincronización y despierta a los que esperan.
+        completed_id es el personaje cuya imagen se acaba de guardar, si lo hay.
+        """
+        with ImageService._status_changed:
+            ImageService.sync_status.update(changes)
+            if completed_id is not None:
+                ImageService._completed_ids.append(completed_id)
+            ImageService._status_version += 1
+            ImageService._status_changed.notify_all()
+
+    @staticmethod
+    def wait_sync_status(version, timeout, completed_from=0):
+        """
+        Espera a que el estado cambie respecto a la versión indicada.
+
+        Args:
+            version: Última versión conocida por el llamador (-1 si ninguna)
+            timeout: Segundos máximos de espera
+            completed_from: Posición del primer id completado que aún no tiene
+
+        Returns:
+            (versión, copia del estado, ids completados desde completed_from,
+            posición siguiente); la versión es la misma si no hubo cambios
+        """
+        with ImageService._status_changed:
+            ImageService._status_changed.wait_for(
+                lambda: ImageService._status_version != version, timeout)
+            base = ImageService._completed_base
+            completed = ImageService._completed_ids[max(0, completed_from - base):]
+            return (ImageService._status_version, dict(ImageService.sync_status),
+                    completed, base + len(ImageService._completed_ids))
+
+    @staticmethod
+    def start_background_sync():
+        """
+        Lanza la descarga de imágenes en un hilo. El estado pasa a "running" antes
+        de volver, para que quien lo consulte justo después no la dé por terminada.
+        """
+        ImageService.reset_sync_status()
+        thread = threading.Thread(target=ImageService.cache_all_images_background)
+        thread.daemon = True
+        thread.start()
 
     @staticmethod
     def get_image_from_db(character_id):
@@ -38,11 +110,110 @@ class ImageService:
         conn.close()
         return row
 
+    @staticmethod
+    def get_images_bulk(character_ids):
+        """
+        Devuelve {id: (image_blob, image)} de los personajes indicados que
+        existen, con una consulta por cada bloque de ids.
+        """
+        result = {}
+        conn = sqlite3.connect(DB_FILE)
+        try:
+            cursor = conn.cursor()
+            for start in range(0, len(character_ids), ImageService.BULK_QUERY_CHUNK):
+                chunk = character_ids[start:start + ImageService.BULK_QUERY_CHUNK]
+                placeholders = ','.join('?' * len(chunk))
+                cursor.execute(
+                    f'SELECT id, image_blob, image FROM characters WHERE id IN ({placeholders})', chunk)
+                for character_id, blob, url in cursor.fetchall():
+                    result[character_id] = (blob, url)
+        finally:
+            conn.close()
+        return result
+
+    @staticmethod
+    def get_thumbnails_bulk(character_ids):
+        """
+        Devuelve {id: miniatura} de los personajes indicados que tienen la imagen
+        guardada. Las miniaturas se guardan en la tabla image_thumbnails junto
+        con el hash de la imagen de la que salieron: solo se generan (y se
+        guardan) la primera vez o cuando la imagen ha cambiado.
+        """
+        result = {}
+        stale = []
+        conn = sqlite3.connect(DB_FILE)
+        try:
+            cursor = conn.cursor()
+            ImageService.ensure_thumbnail_table(cursor)
+            for start in range(0, len(character_ids), ImageService.BULK_QUERY_CHUNK):
+                chunk = character_ids[start:start + ImageService.BULK_QUERY_CHUNK]
+                placeholders = ','.join('?' * len(chunk))
+                cursor.execute(
+                    f'SELECT c.id, c.image_blob, t.blob_hash, t.thumbnail FROM characters c '
+                    f'LEFT JOIN image_thumbnails t ON t.character_id = c.id '
+                    f'WHERE c.id IN ({placeholders})', chunk)
+                for character_id, blob, blob_hash, thumbnail in cursor.fetchall():
+                    if not blob:
+                        continue
+                    if thumbnail and blob_hash == ImageService._blob_hash(blob):
+                        result[character_id] = thumbnail
+                    else:
+                        stale.append((character_id, blob))
+            for character_id, blob in stale:
+                result[character_id] = ImageService.store_thumbnail(cursor, character_id, blob)
+            if stale:
+                conn.commit()
+        finally:
+            conn.close()
+        return result
+
+    @staticmethod
+    def ensure_thumbnail_table(cursor):
+        cursor.execute("""
+        CREATE TABLE IF NOT EXISTS image_thumbnails (
+            character_id VARCHAR(255) PRIMARY KEY,
+            blob_hash VARCHAR(40) NOT NULL,
+            thumbnail BLOB NOT NULL
+        )
+        """)
+
+    @staticmethod
+    def store_thumbnail(cursor, character_id, image_data):
+        """Genera y guarda la miniatura de una imagen (el llamador hace el commit). Devuelve la miniatura."""
+        thumbnail = ImageService.make_thumbnail(image_data)
+        ImageService.ensure_thumbnail_table(cursor)
+        cursor.execute(
+            'INSERT OR REPLACE INTO image_thumbnails (character_id, blob_hash, thumbnail) VALUES (?, ?, ?)',
+            (character_id, ImageService._blob_hash(image_data), thumbnail))
+        return thumbnail
+
+    @staticmethod
+    def _blob_hash(image_data):
+        return hashlib.sha1(image_data).hexdigest()
+
+    @staticmethod
+    def make_thumbnail(image_data, width=None):
+        """Reduce una imagen JPEG al ancho de miniatura. Si ya es pequeña, o no se puede procesar, se devuelve tal cual."""
+        width = width or ImageService.THUMBNAIL_WIDTH
+        try:
+            img = Image.open(io.BytesIO(image_data))
+            if img.width <= width:
+                return image_data
+            height = max(1, round(img.height * width / img.width))
+            img = img.convert('RGB').resize((width, height), Image.LANCZOS)
+            buf = io.BytesIO()
+            img.save(buf, format='JPEG', quality=80)
+            return buf.getvalue()
+        except Exception as e:
+            print(f"Thumbnail error: {e}")
+            return image_data
+
     @staticmethod
     def cache_image(character_id, image_data):
         conn = sqlite3.connect(DB_FILE)
         cursor = conn.cursor()
         cursor.execute('UPDATE characters SET image_blob = ? WHERE id = ?', (image_data, character_id))
+        ImageService.store_thumbnail(cursor, character_id, image_data)
         conn.commit()
         conn.close()
 
@@ -115,10 +286,16 @@ class ImageService:
     @staticmethod
     def cache_all_images_background():
         print("⚡ Starting background image sync (Parallel)...")
-        ImageService.sync_status["running"] = True
-        ImageService.sync_status["current"] = 0
-        ImageService.sync_status["errors"] = 0
-        
+        ImageService.reset_sync_status()
+        try:
+            ImageService._cache_missing_images()
+        finally:
+            # También si falla: quien espera el final no debe quedarse esperando
+            ImageService.update_sync_status(running=False)
+
+    @staticmethod
+    def _cache_missing_images():
+
         conn = sqlite3.connect(DB_FILE)
         cursor = conn.cursor()
         
@@ -126,7 +303,7 @@ class ImageService:
         rows = cursor.fetchall()
         
         total = len(rows)
-        ImageService.sync_status["total"] = total
+        ImageService.update_sync_status(total=total)
         print(f"⚡ Found {total} images to cache.")
         
         # Close main connection to avoid locking if we use other connections
@@ -155,7 +332,8 @@ class ImageService:
             # Process as they complete
             for future in concurrent.futures.as_completed(future_to_char):
                 result = future.result()
-                
+                saved_id = None
+
                 if result:
                     char_id, blob = result
                     try:
@@ -165,9 +343,11 @@ class ImageService:
                         t_conn = sqlite3.connect(DB_FILE)
                         t_cur = t_conn.cursor()
                         t_cur.execute("UPDATE characters SET image_blob = ? WHERE id = ?", (blob, char_id))
+                        ImageService.store_thumbnail(t_cur, char_id, blob)
                         t_conn.commit()
                         t_conn.close()
                         count += 1
+                        saved_id = char_id
                     except Exception as db_err:
                         print(f"DB Error saving image {char_id}: {db_err}")
                         errors += 1
@@ -175,11 +355,9 @@ class ImageService:
                     errors += 1
                 
                 # Update status
-                ImageService.sync_status["current"] = count
-                ImageService.sync_status["errors"] = errors
+                ImageService.update_sync_status(completed_id=saved_id, current=count, errors=errors)
                 
                 if count % 5 == 0:
                     print(f"  ⚡ PROGRESS: {count}/{total} (Errors: {errors})")
 
-        ImageService.sync_status["running"] = False
         print(f"⚡ Background sync complete. Cached: {count}, Errors: {errors}")
@@ -6,7 +6,7 @@ Gestiona la obtención de datos desde la API externa y la sincronización con la
 Autores: Xiker, Gaizka, Diego
 """
 
-from typing import Dict, Optional
+from typing import Dict, List, Optional
 from typing import Dict, Optional
 from backend.services.sync_sqlite import DaoSQLite
 from backend.services.ExportService import ExportService
@@ -152,6 +152,30 @@ class PersonajeService:
         
         return True
     
+    def aplicar_mutaciones(self, mutaciones: List[Dict]) -> List[Dict]:
+        """
+        Aplica un lote de ediciones, borrados y cambios de favorito (ver
+        DaoSQLite.aplicar_mutaciones) y regenera los archivos de exportación una
+        sola vez para todo el lote.
+        
+        Args:
+            mutaciones: Cambios a aplicar, en orden
+            
+        Returns:
+            Un resultado por cambio, en el mismo orden
+        """
+        logger_backend.info(f"APLICANDO LOTE DE {len(mutaciones)} CAMBIOS")
+        resultados = self.dao.aplicar_mutaciones(mutaciones)
+        
+        # Los favoritos no forman parte de las exportaciones
+        if any(r['status'] == 'ok' and r['op'] in ('edit', 'delete') for r in resultados):
+            import threading
+            export_thread = threading.Thread(target=self.export_service.exportar_todo)
+            export_thread.daemon = True
+            export_thread.start()
+        
+        return resultados
+    
     def importar_personajes_desde_csv(self, ruta_csv: str) -> Dict[str, int]:
         """
         Importa personajes masivamente desde un CSV y regenera los archivos
@@ -21,10 +21,17 @@ except ImportError:
     sys.path.append(os.path.dirname(os.path.abspath(__file__)))
     from config import DB_FILE, MYSQL_CONFIG
 from backend.logging_config import logger_backend
+from backend.services.ChangeLogService import ChangeLogService
 
 # Asignar alias para compatibilidad interna
 SQLITE_DB = DB_FILE
 
+# Personajes por lote en el push: cada lote se confirma en MySQL y avanza el
+# punto de control, así que un push interrumpido continúa donde se quedó
+PUSH_BATCH_SIZE = 200
+# Última revisión del change log ya subida a MySQL (tabla sync_state de SQLite)
+PUSH_CHECKPOINT_KEY = 'mysql_push_revision'
+
 def get_sqlite_connection():
     """
     Establece conexión con la base de datos SQLite.
@@ -53,17 +60,20 @@ def get_mysql_connection():
         logger_backend.error(f"Error connecting to MySQL: {e}")
         return None
 
-def create_mysql_tables(cursor):
+def create_mysql_tables(cursor, recreate=True):
     """
     Crea las tablas necesarias en MySQL si no existen.
     
     Args:
         cursor: Cursor de la conexión MySQL.
+        recreate: Si es True se borran antes (copia completa); si no, se
+            conservan para aplicar solo los cambios.
     """
     
     # Tabla de Personajes
     # El manejo de BLOB en MySQL podría necesitar MEDIUMBLOB o LONGBLOB para imágenes
-    cursor.execute("DROP TABLE IF EXISTS characters")
+    if recreate:
+        cursor.execute("DROP TABLE IF EXISTS characters")
     cursor.execute("""
     CREATE TABLE IF NOT EXISTS characters (
         id VARCHAR(255) PRIMARY KEY,
@@ -101,7 +111,8 @@ def create_mysql_tables(cursor):
     logger_backend.debug(f"MySQL Table Schema: {cursor.fetchall()}")
     
     # Tabla de Favoritos
-    cursor.execute("DROP TABLE IF EXISTS favorites")
+    if recreate:
+        cursor.execute("DROP TABLE IF EXISTS favorites")
     cursor.execute("""
     CREATE TABLE IF NOT EXISTS favorites (
         character_id VARCHAR(255) PRIMARY KEY,
@@ -174,10 +185,141 @@ def create_sqlite_tables(cursor):
     except Exception as e:
         logger_backend.error(f"Error creating SQLite tables: {e}")
 
+def _read_push_checkpoint(cursor):
+    """Última revisión subida a MySQL, o None si nunca se completó un push."""
+    cursor.execute("CREATE TABLE IF NOT EXISTS sync_state (key TEXT PRIMARY KEY, value TEXT)")
+    cursor.execute("SELECT value FROM sync_state WHERE key = ?", (PUSH_CHECKPOINT_KEY,))
+    row = cursor.fetchone()
+    return int(row[0]) if row else None
+
+def _checkpoint_usable(cursor, checkpoint, revision):
+    """
+    Indica si el change log conserva todos los cambios desde el punto de
+    control (sin push previo, con la base de datos recreada o con el log ya
+    compactado por detrás del punto de control, no se sabe qué cambió).
+    """
+    return checkpoint is not None and \
+        ChangeLogService.oldest_retained(cursor) - 1 <= checkpoint <= revision
+
+def _write_push_checkpoint(sqlite_conn, revision):
+    cursor = sqlite_conn.cursor()
+    cursor.execute("INSERT OR REPLACE INTO sync_state (key, value) VALUES (?, ?)",
+                   (PUSH_CHECKPOINT_KEY, str(revision)))
+    sqlite_conn.commit()
+
+def _upsert_characters(sqlite_cursor, mysql_cursor, where='', params=()):
+    """
+    Copia a MySQL (INSERT ... ON DUPLICATE KEY UPDATE, en un solo executemany)
+    los personajes de SQLite que cumplen la condición.
+
+    Returns:
+        Ids copiados
+    """
+    sqlite_cursor.execute(f"SELECT * FROM characters {where}", params)
+    rows = sqlite_cursor.fetchall()
+    if not rows:
+        return []
+
+    # Obtener nombres de columnas de SQLite para mapear dinámicamente
+    col_names = [description[0] for description in sqlite_cursor.description]
+    columns = ', '.join(col_names)
+    placeholders = ', '.join(['%s'] * len(col_names))
+    # Construir cláusula ON DUPLICATE UPDATE
+    # MySQL 8.0.20+ prefiere sintaxis 'AS new'
+    update_clause = ', '.join([f"{k}=new.{k}" for k in col_names if k != 'id'])
+    sql = f"""
+    INSERT INTO characters ({columns}) 
+    VALUES ({placeholders}) AS new
+    ON DUPLICATE KEY UPDATE {update_clause}
+    """
+    mysql_cursor.executemany(sql, [list(row) for row in rows])
+    id_index = col_names.index('id')
+    return [row[id_index] for row in rows]
+
+def _push_all(sqlite_conn, mysql_conn, revision):
+    """Copia completa: recrea las tablas de MySQL y sube todos los personajes por lotes."""
+    sqlite_cursor = sqlite_conn.cursor()
+    mysql_cursor = mysql_conn.cursor()
+    create_mysql_tables(mysql_cursor, recreate=True)
+
+    count = 0
+    last_id = ''
+    while True:
+        ids = _upsert_characters(sqlite_cursor, mysql_cursor,
+                                 "WHERE id > ? ORDER BY id LIMIT ?", (last_id, PUSH_BATCH_SIZE))
+        if not ids:
+            break
+        mysql_conn.commit()
+        count += len(ids)
+        last_id = ids[-1]
+        logger_backend.debug(f"  Pushed {count} characters...")
+
+    # Solo una copia completa terminada sirve como punto de partida
+    _write_push_checkpoint(sqlite_conn, revision)
+    return {'mode': 'full', 'upserted': count, 'deleted': 0, 'revision': revision}
+
+def _push_changes(sqlite_conn, mysql_conn, checkpoint):
+    """
+    Sube solo los personajes cambiados desde el punto de control, por lotes en
+    orden de revisión. Tras cada lote confirmado en MySQL se guarda la revisión
+    alcanzada.
+
+    Returns:
+        Resumen del push, o None si el change log exige una copia completa
+    """
+    sqlite_cursor = sqlite_conn.cursor()
+    mysql_cursor = mysql_conn.cursor()
+    create_mysql_tables(mysql_cursor, recreate=False)
+
+    upserted = 0
+    deleted = 0
+    while True:
+        sqlite_cursor.execute(
+            "SELECT revision, character_id, op FROM change_log WHERE revision > ? ORDER BY revision LIMIT ?",
+            (checkpoint, PUSH_BATCH_SIZE))
+        entries = sqlite_cursor.fetchall()
+        if not entries:
+            break
+
+        # Si un personaje cambió varias veces en el lote, solo cuenta la última
+        last_op = {}
+        for _, character_id, op in entries:
+            if op == ChangeLogService.OP_RESET:
+                return None
+            last_op[character_id] = op
+
+        upsert_ids = [cid for cid, op in last_op.items() if op == ChangeLogService.OP_UPSERT]
+        delete_ids = [cid for cid, op in last_op.items() if op == ChangeLogService.OP_DELETE]
+        if upsert_ids:
+            placeholders = ','.join('?' * len(upsert_ids))
+            pushed = _upsert_characters(sqlite_cursor, mysql_cursor,
+                                        f"WHERE id IN ({placeholders})", upsert_ids)
+            upserted += len(pushed)
+            # Borrado después de registrar el cambio: se borra también en MySQL
+            pushed = set(pushed)
+            delete_ids += [cid for cid in upsert_ids if cid not in pushed]
+        if delete_ids:
+            mysql_cursor.executemany("DELETE FROM characters WHERE id = %s", delete_ids)
+            deleted += len(delete_ids)
+
+        mysql_conn.commit()
+        checkpoint = entries[-1][0]
+        _write_push_checkpoint(sqlite_conn, checkpoint)
+        logger_backend.debug(f"  Pushed changes up to revision {checkpoint}...")
+
+    return {'mode': 'incremental', 'upserted': upserted, 'deleted': deleted, 'revision': checkpoint}
+
 def sync_sqlite_to_mysql():
     """
     Función principal de sincronización.
-    Lee datos de SQLite y los inserta/actualiza en MySQL.
+    Sube a MySQL los cambios locales registrados en el change log desde el
+    último push; la primera vez (o tras un cambio masivo) hace una copia
+    completa.
+
+    Returns:
+        dict con el resumen ('mode', 'upserted', 'deleted', 'revision'), o
+        {'deferred': 'pending_images'} si aún faltan imágenes por descargar, o
+        None si falló
     """
     logger_backend.info("Starting sync: SQLite -> MySQL...")
     
@@ -186,14 +328,10 @@ def sync_sqlite_to_mysql():
     
     if not sqlite_conn or not mysql_conn:
         logger_backend.error("✗ Connection failed. Aborting sync.")
-        return
+        return None
 
     try:
         sqlite_cursor = sqlite_conn.cursor()
-        mysql_cursor = mysql_conn.cursor()
-        
-        # 1. Crear Tablas
-        create_mysql_tables(mysql_cursor)
         
         # VERIFICACIÓN DE INTEGRIDAD DE IMÁGENES
         # No subir a MySQL si las imágenes locales aún no se han descargado completamente.
@@ -204,40 +342,19 @@ def sync_sqlite_to_mysql():
         if pending_images > 0:
             logger_backend.error(f"🛑 SYNC ABORTED: Found {pending_images} pending images download locally.")
             logger_backend.error("Please wait until all images are cached locally before pushing to MySQL.")
-            return
+            return {'deferred': 'pending_images'}
+
+        # Revisión de partida: lo que se registre a partir de aquí irá en el siguiente push
+        revision = ChangeLogService.current_revision(sqlite_cursor)
+        checkpoint = _read_push_checkpoint(sqlite_cursor)
+
+        result = None
+        if _checkpoint_usable(sqlite_cursor, checkpoint, revision):
+            result = _push_changes(sqlite_conn, mysql_conn, checkpoint)
+        if result is None:
+            # Sin push previo, base de datos recreada, log compactado o cambio masivo
+            result = _push_all(sqlite_conn, mysql_conn, revision)
 
-        # 2. Sincronizar Personajes
-        logger_backend.debug("  Syncing characters...")
-        sqlite_cursor.execute("SELECT * FROM characters")
-        characters = sqlite_cursor.fetchall()
-        
-        # Obtener nombres de columnas de SQLite para mapear dinámicamente
-        col_names = [description[0] for description in sqlite_cursor.description]
-        logger_backend.debug(f"SQLite Columns: {col_names}")
-        
-        count = 0
-        for char in characters:
-            char_dict = dict(zip(col_names, char))
-            
-            # Preparar consulta
-            columns = ', '.join(char_dict.keys())
-            placeholders = ', '.join(['%s'] * len(char_dict))
-            
-            # Construir cláusula ON DUPLICATE UPDATE
-            # MySQL 8.0.20+ prefiere sintaxis 'AS new'
-            update_clause = ', '.join([f"{k}=new.{k}" for k in char_dict.keys() if k != 'id'])
-            
-            sql = f"""
-            INSERT INTO characters ({columns}) 
-            VALUES ({placeholders}) AS new
-            ON DUPLICATE KEY UPDATE {update_clause}
-            """
-            
-            mysql_cursor.execute(sql, list(char_dict.values()))
-            count += 1
-            
-        logger_backend.info(f"  [OK] Synced {count} characters to MySQL.")
-        
         # 3. Sincronizar Favoritos (DESACTIVADO: Local Only)
         # logger_backend.debug("  Syncing favorites...")
         # sqlite_cursor.execute("SELECT * FROM favorites")
@@ -255,8 +372,10 @@ def sync_sqlite_to_mysql():
             
         # logger_backend.info(f"  [OK] Synced {fav_count} favorites to MySQL.")
         
-        mysql_conn.commit()
+        logger_backend.info(f"  [OK] Synced characters to MySQL ({result['mode']}): "
+                            f"{result['upserted']} upserted, {result['deleted']} deleted.")
         logger_backend.info("[OK] Synchronization complete!")
+        return result
         
     except pymysql.MySQLError as e:
         logger_backend.error(f"[ERROR] MySQL Error: {e}")
@@ -264,11 +383,15 @@ def sync_sqlite_to_mysql():
         logger_backend.error(f"[ERROR] SQLite Error: {e}")
     finally:
         if mysql_conn: mysql_conn.close()
+        if sqlite_conn: sqlite_conn.close()
+    return None
 
 def sync_mysql_to_sqlite():
     """
     descarga cambios de MySQL y actualiza la base de datos local SQLite (Pull).
-    Estrategia 'Smart Merge': Actualiza lo local con lo remoto.
+    Estrategia 'Smart Merge': Actualiza lo local con lo remoto, salvo los
+    personajes con cambios locales aún sin subir (p. ej. si al salir no dio
+    tiempo al push), que se conservan hasta el siguiente push.
     """
     logger_backend.info("Starting sync: MySQL -> SQLite (Pull)...")
     
@@ -284,6 +407,15 @@ def sync_mysql_to_sqlite():
         # Ensure tables exist locally before pulling
         create_sqlite_tables(sqlite_cursor)
 
+        # Cambios locales pendientes de push (sin push previo no se sabe cuáles son)
+        checkpoint = _read_push_checkpoint(sqlite_cursor)
+        revision_before = ChangeLogService.current_revision(sqlite_cursor)
+        unpushed = set()
+        if _checkpoint_usable(sqlite_cursor, checkpoint, revision_before):
+            sqlite_cursor.execute(
+                "SELECT DISTINCT character_id FROM change_log WHERE revision > ?", (checkpoint,))
+            unpushed = {row[0] for row in sqlite_cursor.fetchall()}
+
         # pymysql dictionary cursor
         mysql_cursor = mysql_conn.cursor(pymysql.cursors.DictCursor)
         
@@ -327,12 +459,29 @@ def sync_mysql_to_sqlite():
         mysql_cursor.execute("SELECT * FROM characters")
         characters = mysql_cursor.fetchall()
         
+        # Columnas comparadas para saber si el pull cambió realmente un personaje
+        tracked_fields = [
+            'name', 'house', 'image', 'died', 'born', 'patronus', 'gender', 'species',
+            'blood_status', 'role', 'wiki', 'slug', 'alias_names', 'animagus', 'boggart',
+            'eye_color', 'family_member', 'hair_color', 'height', 'jobs', 'nationality',
+            'romances', 'skin_color', 'titles', 'wand', 'weight'
+        ]
+        
         count = 0
+        changed = 0
         for char in characters:
-            # Recuperar blob actual local si existe, para protegerlo
-            sqlite_cursor.execute("SELECT image_blob FROM characters WHERE id = ?", (char['id'],))
+            if char['id'] in unpushed:
+                continue
+
+            # Recuperar fila local (y su blob) si existe, para protegerlo y comparar
+            sqlite_cursor.execute(
+                f"SELECT image_blob, {', '.join(tracked_fields)} FROM characters WHERE id = ?", (char['id'],))
             row = sqlite_cursor.fetchone()
             local_blob = row[0] if row else None
+            remote_values = tuple(char[f] for f in tracked_fields)
+            if not row or tuple(row[1:]) != remote_values:
+                ChangeLogService.record(char['id'], ChangeLogService.OP_UPSERT, sqlite_cursor)
+                changed += 1
             
             # Usar blob remoto solo si existe, si no, mantener local
             blob_to_save = char['image_blob']
@@ -361,8 +510,17 @@ def sync_mysql_to_sqlite():
             ))
             count += 1
             
-        logger_backend.info(f"  [OK] Pulled {count} characters.")
-        
+        logger_backend.info(f"  [OK] Pulled {count} characters ({changed} changed, "
+                            f"{len(unpushed)} kept with unpushed local changes).")
+
+        # Lo que trae el pull ya está en MySQL: si no había nada pendiente de
+        # subir (ni se ha registrado otro cambio mientras tanto), tampoco hay que
+        # subirlo en el siguiente push
+        revision_after = ChangeLogService.current_revision(sqlite_cursor)
+        if checkpoint is not None and checkpoint == revision_before and revision_after == revision_before + changed:
+            sqlite_cursor.execute("INSERT OR REPLACE INTO sync_state (key, value) VALUES (?, ?)",
+                                  (PUSH_CHECKPOINT_KEY, str(revision_after)))
+
         sqlite_conn.commit()
         logger_backend.info("[OK] Pull complete!")
         
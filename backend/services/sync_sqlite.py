@@ -11,6 +11,7 @@ from typing import Dict, List, Optional
 import json
 from typing import Dict, List, Optional
 from backend.services.sync_mysql import get_sqlite_connection
+from backend.services.ChangeLogService import ChangeLogService
 from backend.logging_config import logger_backend
 
 
@@ -104,6 +105,7 @@ class DaoSQLite:
                 wand,
                 personaje.get('weight', '')
             ))
+            ChangeLogService.record(personaje.get('id'), ChangeLogService.OP_UPSERT, cursor)
             
             conn.commit()
             conn.close()
@@ -142,28 +144,7 @@ class DaoSQLite:
                 return False
             
             # Construir la query dinámicamente según los campos proporcionados
-            campos_actualizar = []
-            valores = []
-            
-            # Campos simples
-            campos_simples = [
-                'name', 'house', 'image', 'died', 'born', 'patronus',
-                'gender', 'species', 'blood_status', 'role', 'wiki', 'slug',
-                'animagus', 'boggart', 'eye_color', 'hair_color', 'height',
-                'nationality', 'skin_color', 'weight', 'image_blob'
-            ]
-            
-            for campo in campos_simples:
-                if campo in datos_actualizados:
-                    campos_actualizar.append(f"{campo} = ?")
-                    valores.append(datos_actualizados[campo])
-            
-            # Campos JSON
-            campos_json = ['alias_names', 'family_member', 'jobs', 'romances', 'titles', 'wand']
-            for campo in campos_json:
-                if campo in datos_actualizados:
-                    campos_actualizar.append(f"{campo} = ?")
-                    valores.append(json.dumps(datos_actualizados[campo]))
+            campos_actualizar, valores = self._campos_edicion(datos_actualizados)
             
             if not campos_actualizar:
                 logger_backend.warning("⚠ No hay campos para actualizar")
@@ -175,6 +156,7 @@ class DaoSQLite:
             
             query = f"UPDATE characters SET {', '.join(campos_actualizar)} WHERE id = ?"
             cursor.execute(query, valores)
+            ChangeLogService.record(personaje_id, ChangeLogService.OP_UPSERT, cursor)
             
             conn.commit()
             conn.close()
@@ -185,6 +167,102 @@ class DaoSQLite:
             logger_backend.error(f"✗ Error al editar personaje: {str(e)}", exc_info=True)
             return False
     
+    @staticmethod
+    def _campos_edicion(datos_actualizados: Dict):
+        """
+        Asignaciones ("campo = ?") y valores del UPDATE de una edición, solo con
+        los campos proporcionados.
+        """
+        campos_actualizar = []
+        valores = []
+        
+        # Campos simples
+        campos_simples = [
+            'name', 'house', 'image', 'died', 'born', 'patronus',
+            'gender', 'species', 'blood_status', 'role', 'wiki', 'slug',
+            'animagus', 'boggart', 'eye_color', 'hair_color', 'height',
+            'nationality', 'skin_color', 'weight', 'image_blob'
+        ]
+        
+        for campo in campos_simples:
+            if campo in datos_actualizados:
+                campos_actualizar.append(f"{campo} = ?")
+                valores.append(datos_actualizados[campo])
+        
+        # Campos JSON
+        campos_json = ['alias_names', 'family_member', 'jobs', 'romances', 'titles', 'wand']
+        for campo in campos_json:
+            if campo in datos_actualizados:
+                campos_actualizar.append(f"{campo} = ?")
+                valores.append(json.dumps(datos_actualizados[campo]))
+        
+        return campos_actualizar, valores
+    
+    def aplicar_mutaciones(self, mutaciones: List[Dict]) -> List[Dict]:
+        """
+        Aplica un lote de cambios (edición, borrado o favorito) en una sola
+        transacción. Cada cambio va en su propio savepoint, así que uno que falla
+        no impide aplicar los demás.
+        
+        Args:
+            mutaciones: Lista de {"op": "edit" | "delete" | "favorite", "id": ...,
+                "data": {...} (edit), "is_favorite": bool (favorite)}
+            
+        Returns:
+            Un resultado por cambio y en el mismo orden: {"id", "op", "status"}, con
+            status "ok", "not_found", "invalid" o "error" (este último con "error")
+        """
+        resultados = []
+        conn = self._get_connection()
+        try:
+            cursor = conn.cursor()
+            for i, mutacion in enumerate(mutaciones):
+                op = mutacion.get('op')
+                personaje_id = mutacion.get('id')
+                resultado = {'id': personaje_id, 'op': op, 'status': 'ok'}
+                resultados.append(resultado)
+                if op not in ('edit', 'delete', 'favorite') or not personaje_id:
+                    resultado['status'] = 'invalid'
+                    continue
+                
+                cursor.execute(f"SAVEPOINT mutacion_{i}")
+                try:
+                    cursor.execute('SELECT id FROM characters WHERE id = ?', (personaje_id,))
+                    if not cursor.fetchone():
+                        resultado['status'] = 'not_found'
+                    elif op == 'edit':
+                        campos_actualizar, valores = self._campos_edicion(mutacion.get('data') or {})
+                        if campos_actualizar:
+                            cursor.execute(f"UPDATE characters SET {', '.join(campos_actualizar)} WHERE id = ?",
+                                           valores + [personaje_id])
+                            ChangeLogService.record(personaje_id, ChangeLogService.OP_UPSERT, cursor)
+                        else:
+                            resultado['status'] = 'invalid'
+                    elif op == 'delete':
+                        cursor.execute('DELETE FROM characters WHERE id = ?', (personaje_id,))
+                        cursor.execute('DELETE FROM favorites WHERE character_id = ?', (personaje_id,))
+                        ChangeLogService.record(personaje_id, ChangeLogService.OP_DELETE, cursor)
+                    else:
+                        if mutacion.get('is_favorite'):
+                            cursor.execute('INSERT OR REPLACE INTO favorites (character_id, is_favorite) VALUES (?, 1)',
+                                           (personaje_id,))
+                        else:
+                            cursor.execute('DELETE FROM favorites WHERE character_id = ?', (personaje_id,))
+                        ChangeLogService.record(personaje_id, ChangeLogService.OP_UPSERT, cursor)
+                    cursor.execute(f"RELEASE mutacion_{i}")
+                except sqlite3.Error as e:
+                    cursor.execute(f"ROLLBACK TO mutacion_{i}")
+                    cursor.execute(f"RELEASE mutacion_{i}")
+                    resultado['status'] = 'error'
+                    resultado['error'] = str(e)
+            
+            conn.commit()
+        finally:
+            conn.close()
+        
+        logger_backend.debug(f"✓ Lote de {len(mutaciones)} cambios aplicado en SQLite")
+        return resultados
+    
     def eliminar_personaje(self, personaje_id: str) -> bool:
         """
         Elimina un personaje de la base de datos
@@ -213,6 +291,7 @@ class DaoSQLite:
             
             # Eliminar también de favoritos si existe
             cursor.execute('DELETE FROM favorites WHERE character_id = ?', (personaje_id,))
+            ChangeLogService.record(personaje_id, ChangeLogService.OP_DELETE, cursor)
             
             conn.commit()
             conn.close()
@@ -304,3 +383,173 @@ class DaoSQLite:
         except Exception as e:
             logger_backend.error(f"✗ Error al obtener personajes: {str(e)}", exc_info=True)
             return []
+
+    # ==========================================
+    # CONSULTA PAGINADA (servidor)
+    # ==========================================
+
+    # Criterios de orden admitidos -> expresión SQL. Los índices de
+    # _asegurar_indices usan exactamente estas expresiones para que SQLite
+    # pueda recorrerlos en orden sin ordenar en memoria.
+    ORDENES = {
+        'name': "IFNULL(c.name, '') COLLATE NOCASE",
+        'house': "IFNULL(c.house, '') COLLATE NOCASE",
+    }
+    TAMANO_MAXIMO_PAGINA = 500
+    _indices_creados = False
+
+    def _asegurar_indices(self, cursor):
+        """
+        Crea (una vez por proceso) los índices que usa consultar_personajes.
+
+        Author: Xiker
+        """
+        if DaoSQLite._indices_creados:
+            return
+        cursor.execute("CREATE INDEX IF NOT EXISTS idx_characters_name_ci "
+                       "ON characters(IFNULL(name, '') COLLATE NOCASE, id)")
+        cursor.execute("CREATE INDEX IF NOT EXISTS idx_characters_house_ci "
+                       "ON characters(IFNULL(house, '') COLLATE NOCASE, id)")
+        cursor.execute("CREATE INDEX IF NOT EXISTS idx_favorites_is_favorite "
+                       "ON favorites(is_favorite, character_id)")
+        DaoSQLite._indices_creados = True
+
+    @staticmethod
+    def _patron_like(texto: str) -> str:
+        """Patrón LIKE de 'contiene', escapando los comodines del usuario."""
+        escapado = texto.replace('\\', '\\\\').replace('%', '\\%').replace('_', '\\_')
+        return f"%{escapado}%"
+
+    def consultar_personajes(self, size: int = 50, sort: str = 'name', after: Optional[List] = None,
+                             offset: int = 0, house: Optional[str] = None, status: Optional[str] = None,
+                             q: Optional[str] = None, patronus: Optional[str] = None,
+                             favorites: bool = False, with_total: bool = False) -> Dict:
+        """
+        Devuelve una página de personajes filtrada y ordenada en la base de datos.
+
+        La paginación es por clave (keyset): `after` es la clave [valor de orden, id]
+        del último personaje de la página anterior, de modo que cada página cuesta
+        lo mismo aunque se esté muy adentro de la lista. `offset` solo se usa si no
+        hay `after`.
+
+        Args:
+            size: Personajes por página (máx. TAMANO_MAXIMO_PAGINA)
+            sort: 'name' o 'house'; con '-' delante, orden descendente
+            after: Clave del último personaje de la página anterior
+            offset: Desplazamiento (paginación clásica por número de página)
+            house: Texto contenido en la casa, 'none' (sin casa) o 'unknown'
+            status: 'alive', 'deceased' o 'unknown'
+            q: Texto contenido en el nombre
+            patronus: Texto contenido en el patronus
+            favorites: Solo favoritos
+            with_total: Incluir el total de resultados y las casas distintas
+
+        Returns:
+            {'items': [...], 'next': clave o None, 'total': int?, 'houses': [...]?}
+
+        Author: Xiker
+        """
+        descendente = sort.startswith('-')
+        campo = sort.lstrip('-')
+        if campo not in self.ORDENES:
+            raise ValueError(f"Invalid sort: {sort}")
+        orden = self.ORDENES[campo]
+        size = max(1, min(int(size), self.TAMANO_MAXIMO_PAGINA))
+
+        condiciones = []
+        params = []
+        if favorites:
+            condiciones.append('f.is_favorite = 1')
+        if house:
+            if house == 'none':
+                condiciones.append("IFNULL(TRIM(c.house), '') = ''")
+            elif house == 'unknown':
+                condiciones.append("(c.house LIKE '%unknown%' OR c.house LIKE '%desconocido%')")
+            else:
+                condiciones.append("c.house LIKE ? ESCAPE '\\'")
+                params.append(self._patron_like(house))
+        if status:
+            # El estado se deduce de la fecha de fallecimiento, como en el cliente
+            if status == 'alive':
+                condiciones.append("IFNULL(c.died, '') = ''")
+            elif status == 'deceased':
+                condiciones.append("IFNULL(c.died, '') <> ''")
+            elif status == 'unknown':
+                condiciones.append('0')
+            else:
+                raise ValueError(f"Invalid status: {status}")
+        if q:
+            condiciones.append("c.name LIKE ? ESCAPE '\\'")
+            params.append(self._patron_like(q))
+        if patronus:
+            condiciones.append("c.patronus LIKE ? ESCAPE '\\'")
+            params.append(self._patron_like(patronus))
+
+        filtro = ('WHERE ' + ' AND '.join(condiciones)) if condiciones else ''
+
+        try:
+            conn = self._get_connection()
+            try:
+                cursor = conn.cursor()
+                self._asegurar_indices(cursor)
+                conn.commit()
+
+                columnas = [fila[1] for fila in cursor.execute('PRAGMA table_info(characters)').fetchall()
+                            if fila[1] != 'image_blob']
+                seleccion = ', '.join(f'c.{col}' for col in columnas)
+
+                pagina_cond = list(condiciones)
+                pagina_params = list(params)
+                if after:
+                    # La cota sobre la primera columna permite a SQLite buscar en el
+                    # índice en vez de recorrerlo desde el principio
+                    op = '<' if descendente else '>'
+                    pagina_cond.append(f"{orden} {op}= ? AND ({orden}, c.id) {op} (?, ?)")
+                    pagina_params.extend([after[0], after[0], after[1]])
+                pagina_filtro = ('WHERE ' + ' AND '.join(pagina_cond)) if pagina_cond else ''
+                direccion = 'DESC' if descendente else 'ASC'
+
+                sql = (f"SELECT {seleccion}, {orden} AS sort_key, f.is_favorite AS is_favorite "
+                       f"FROM characters c LEFT JOIN favorites f ON f.character_id = c.id "
+                       f"{pagina_filtro} ORDER BY {orden} {direccion}, c.id {direccion} LIMIT ?")
+                pagina_params.append(size + 1)
+                if not after and offset:
+                    sql += ' OFFSET ?'
+                    pagina_params.append(int(offset))
+                filas = cursor.execute(sql, pagina_params).fetchall()
+
+                hay_mas = len(filas) > size
+                filas = filas[:size]
+                items = []
+                for fila in filas:
+                    personaje = dict(fila)
+                    for field in ['alias_names', 'family_member', 'jobs', 'romances', 'titles', 'wand']:
+                        try:
+                            personaje[field] = json.loads(personaje[field]) if personaje.get(field) else []
+                        except json.JSONDecodeError:
+                            personaje[field] = []
+                    personaje['is_favorite'] = bool(personaje.get('is_favorite'))
+                    items.append(personaje)
+
+                resultado = {'items': items, 'next': None}
+                if hay_mas and items:
+                    ultimo = items[-1]
+                    resultado['next'] = [ultimo['sort_key'], ultimo['id']]
+                for personaje in items:
+                    del personaje['sort_key']
+
+                if with_total:
+                    cursor.execute(f"SELECT COUNT(*) FROM characters c "
+                                   f"LEFT JOIN favorites f ON f.character_id = c.id {filtro}", params)
+                    resultado['total'] = cursor.fetchone()[0]
+                    cursor.execute("SELECT DISTINCT house FROM characters "
+                                   "WHERE IFNULL(TRIM(house), '') <> '' ORDER BY house")
+                    resultado['houses'] = [fila[0] for fila in cursor.fetchall()]
+                return resultado
+            finally:
+                conn.close()
+        except ValueError:
+            raise
+        except Exception as e:
+            logger_backend.error(f"✗ Error al consultar personajes: {str(e)}", exc_info=True)
+            raise
@@ -7,6 +7,7 @@
     requires java.logging;
     requires jasperreports;
     requires java.sql;
+    requires java.net.http;
     requires org.slf4j;
 
     exports org.GaizkaFrost;
@@ -9,7 +9,9 @@ import javafx.application.Platform;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonType;
 import javafx.scene.control.ButtonBar;
+import org.GaizkaFrost.services.BackgroundTasks;
 import org.GaizkaFrost.services.HarryPotterAPI;
+import org.GaizkaFrost.services.MutationOutbox;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -17,6 +19,8 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 
 import java.net.URL;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Clase principal de la aplicación JavaFX.
@@ -30,6 +34,10 @@ public class App extends Application {
 
     private static final Logger logger = LoggerFactory.getLogger(App.class);
 
+    // Tiempo máximo que "Sincronizar y Salir" espera al push antes de cerrar
+    private static final Duration EXIT_SYNC_TIMEOUT = Duration
+            .ofSeconds(Long.getLong("anuario.exit.syncTimeoutSeconds", 5));
+
     /** El escenario principal de la aplicación. */
 
     private static Stage stage;
@@ -64,14 +72,16 @@ public class App extends Application {
         fontSize = size;
     }
 
-    private static int lastPage = 0;
+    // Índice del primer personaje visible en la vista principal, para volver al
+    // mismo punto de la lista al regresar de otra vista
+    private static int lastScrollIndex = 0;
 
-    public static int getLastPage() {
-        return lastPage;
+    public static int getLastScrollIndex() {
+        return lastScrollIndex;
     }
 
-    public static void setLastPage(int page) {
-        lastPage = page;
+    public static void setLastScrollIndex(int index) {
+        lastScrollIndex = index;
     }
 
     public static void applyFontSize(Parent root) {
@@ -338,13 +348,16 @@ public class App extends Application {
 
     /**
      * Se llama cuando la aplicación se detiene.
-     * Forzamos la salida del sistema para asegurar que el Lanzador mate el backend.
+     * Cancela las tareas en segundo plano y cierra el transporte HTTP. Todos los
+     * hilos de trabajo son daemon, así que la JVM termina por sí sola y el
+     * Lanzador puede matar el backend desde su shutdown hook.
      */
     @Override
     public void stop() throws Exception {
         super.stop();
-        System.out.println("Applicación FX detenida. Forzando salida del sistema...");
-        System.exit(0);
+        BackgroundTasks.shutdown(Duration.ofSeconds(2));
+        HarryPotterAPI.shutdown();
+        logger.info("FX application stopped");
     }
 
     /**
@@ -403,24 +416,42 @@ public class App extends Application {
         }
         progress.show();
 
-        new Thread(() -> {
-            boolean success = HarryPotterAPI.fullSync();
-            Platform.runLater(() -> {
-                progress.close();
-                if (!success) {
-                    Alert error = new Alert(Alert.AlertType.ERROR);
-                    setIcon(error);
-                    error.setTitle("Error");
-                    error.setHeaderText("Falló la sincronización");
-                    error.setContentText("No se pudo conectar con el servidor. Se cerrará la aplicación.");
-                    if (isDarkMode) {
-                        error.getDialogPane().getStylesheets()
-                                .add(getClass().getResource("/styles/estilos_ravenclaw.css").toExternalForm());
+        // Al salir basta con subir los cambios (el pull no serviría de nada), pero
+        // antes hay que vaciar la cola de cambios diferidos para que el push los
+        // incluya. Las esperas están acotadas: lo que no dé tiempo a enviar queda
+        // en el diario o en el backend y se sube en el próximo inicio
+        MutationOutbox.flush()
+                .completeOnTimeout(null, EXIT_SYNC_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)
+                .thenCompose(v -> {
+                    if (MutationOutbox.size() > 0) {
+                        logger.warn("{} character changes not sent after {} s; they will be sent on next launch",
+                                MutationOutbox.size(), EXIT_SYNC_TIMEOUT.getSeconds());
                     }
-                    error.showAndWait();
-                }
-                Platform.exit();
-            });
-        }).start();
+                    return HarryPotterAPI.syncPushAsync()
+                            .exceptionally(ex -> false)
+                            .completeOnTimeout(null, EXIT_SYNC_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+                })
+                .thenAccept(success -> {
+                    Platform.runLater(() -> {
+                        progress.close();
+                        if (success == null) {
+                            logger.warn("Push not finished after {} s; pending changes will be pushed on next launch",
+                                    EXIT_SYNC_TIMEOUT.getSeconds());
+                        } else if (!success) {
+                            Alert error = new Alert(Alert.AlertType.ERROR);
+                            setIcon(error);
+                            error.setTitle("Error");
+                            error.setHeaderText("Falló la sincronización");
+                            error.setContentText("No se pudo conectar con el servidor. Sus cambios se subirán "
+                                    + "la próxima vez que inicie la aplicación.");
+                            if (isDarkMode) {
+                                error.getDialogPane().getStylesheets()
+                                        .add(getClass().getResource("/styles/estilos_ravenclaw.css").toExternalForm());
+                            }
+                            error.showAndWait();
+                        }
+                        Platform.exit();
+                    });
+                });
     }
 }
\ No newline at end of file
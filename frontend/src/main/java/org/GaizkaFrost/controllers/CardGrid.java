@@ -0,0 +1,394 @@
+package org.GaizkaFrost.controllers;
+
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Node;
+import javafx.scene.control.IndexedCell;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.skin.VirtualFlow;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.StackPane;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Rejilla virtualizada de tarjetas.
+ * Internamente es un {@link ListView} en el que cada celda es una fila de
+ * tarjetas: solo existen las filas visibles y, al desplazarse, sus tarjetas se
+ * reutilizan y se vuelven a enlazar con otros elementos. El número de nodos no
+ * depende del tamaño de la lista, así que se puede recorrer entera sin
+ * paginación.
+ *
+ * <p>
+ * El número de columnas se calcula a partir del ancho disponible y del ancho de
+ * tarjeta configurado.
+ * </p>
+ *
+ * @param <T> Tipo de los elementos mostrados.
+ * @author Gaizka
+ * @author Xiker
+ * @author Diego
+ */
+public class CardGrid<T> extends StackPane {
+
+    /**
+     * Tarjeta reutilizable de la rejilla.
+     *
+     * @param <T> Tipo del elemento que muestra.
+     */
+    public interface Card<T> {
+
+        /** Nodo raíz de la tarjeta. */
+        Node getNode();
+
+        /**
+         * Muestra el elemento indicado, o libera los recursos de la tarjeta si es
+         * null (la tarjeta deja de estar visible).
+         */
+        void update(T item);
+    }
+
+    // Margen reservado para la barra de desplazamiento vertical
+    private static final double SCROLLBAR_RESERVE = 20;
+
+    private final ListView<Fila> filas = new ListView<>();
+    private final ObservableList<Fila> indicesFilas = FXCollections.observableArrayList();
+    // Aumenta con cada refresh(Predicate): las celdas guardadas por el ListView
+    // fuera de la vista que se enlazaron antes se vuelven a enlazar al reutilizarse
+    private long generacion = 0;
+
+    private List<T> items = Collections.emptyList();
+    private Supplier<? extends Card<T>> cardFactory;
+    private double cardWidth = 200;
+    private double hgap = 12;
+    private double vgap = 12;
+    private double scrollMultiplier = 1.0;
+    private int columnas = 1;
+    private Runnable onViewportChanged;
+    private boolean viewportPendiente = false;
+
+    public CardGrid() {
+        getStyleClass().add("card-grid");
+        filas.setItems(indicesFilas);
+        filas.setFocusTraversable(false);
+        filas.setCellFactory(lv -> new FilaCell());
+        getChildren().add(filas);
+
+        filas.widthProperty().addListener((obs, o, n) -> recalcularColumnas());
+
+        // Desplazamiento más rápido que el de por defecto del ListView
+        filas.addEventFilter(ScrollEvent.SCROLL, event -> {
+            VirtualFlow<?> flow = getFlow();
+            if (flow != null && event.getDeltaY() != 0 && scrollMultiplier != 1.0) {
+                flow.scrollPixels(-event.getDeltaY() * scrollMultiplier);
+                event.consume();
+            }
+        });
+    }
+
+    // ==========================================
+    // CONFIGURACIÓN
+    // ==========================================
+
+    /**
+     * Fábrica de tarjetas. Solo se crean tantas como caben en las filas visibles.
+     */
+    public void setCardFactory(Supplier<? extends Card<T>> cardFactory) {
+        this.cardFactory = cardFactory;
+        actualizarFilas();
+    }
+
+    /** Ancho de cada tarjeta, usado para calcular el número de columnas. */
+    public void setCardWidth(double cardWidth) {
+        this.cardWidth = cardWidth;
+        recalcularColumnas();
+    }
+
+    /** Separación horizontal y vertical entre tarjetas. */
+    public void setGaps(double hgap, double vgap) {
+        this.hgap = hgap;
+        this.vgap = vgap;
+        actualizarFilas();
+        recalcularColumnas();
+    }
+
+    /**
+     * Acción a ejecutar cuando cambian las filas visibles (desplazamiento, nuevos
+     * datos o cambio de tamaño). Se llama una vez por pulso de la interfaz, ya
+     * con las celdas colocadas, así que {@link #getVisibleRange()} es fiable.
+     */
+    public void setOnViewportChanged(Runnable onViewportChanged) {
+        this.onViewportChanged = onViewportChanged;
+    }
+
+    /** Factor aplicado a la rueda del ratón (1.0 = velocidad por defecto). */
+    public void setScrollMultiplier(double scrollMultiplier) {
+        this.scrollMultiplier = scrollMultiplier;
+    }
+
+    // ==========================================
+    // DATOS Y POSICIÓN
+    // ==========================================
+
+    /**
+     * Muestra los elementos indicados, conservando la posición de desplazamiento.
+     * La lista no se copia: el llamador no debe modificarla mientras se muestre
+     * (basta con pasar una lista nueva).
+     */
+    public void setItems(List<T> items) {
+        this.items = items != null ? items : Collections.emptyList();
+        actualizarFilas();
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    /** Vuelve a enlazar las tarjetas visibles (p. ej. tras editar un elemento). */
+    public void refresh() {
+        actualizarFilas();
+    }
+
+    /**
+     * Vuelve a enlazar solo las tarjetas visibles cuyo elemento cumple la
+     * condición; el resto de la rejilla no se toca.
+     */
+    @SuppressWarnings("unchecked")
+    public void refresh(Predicate<? super T> afectado) {
+        generacion++;
+        VirtualFlow<?> flow = getFlow();
+        if (flow == null) {
+            return;
+        }
+        IndexedCell<?> first = flow.getFirstVisibleCell();
+        IndexedCell<?> last = flow.getLastVisibleCell();
+        if (first == null || last == null) {
+            return;
+        }
+        for (int i = first.getIndex(); i <= last.getIndex(); i++) {
+            IndexedCell<?> celda = flow.getVisibleCell(i);
+            if (celda instanceof CardGrid.FilaCell) {
+                ((FilaCell) celda).refrescar(afectado);
+            }
+        }
+    }
+
+    /**
+     * Desplaza la rejilla para que el elemento indicado quede en la primera fila
+     * visible.
+     */
+    public void scrollToIndex(int index) {
+        if (index <= 0 || items.isEmpty()) {
+            filas.scrollTo(0);
+            return;
+        }
+        filas.scrollTo(Math.min(index, items.size() - 1) / columnas);
+    }
+
+    /**
+     * Índice del primer elemento de la primera fila visible, para restaurar la
+     * posición más tarde con {@link #scrollToIndex(int)}.
+     */
+    public int getFirstVisibleIndex() {
+        VirtualFlow<?> flow = getFlow();
+        if (flow == null) {
+            return 0;
+        }
+        IndexedCell<?> first = flow.getFirstVisibleCell();
+        return first != null && first.getIndex() >= 0 ? first.getIndex() * columnas : 0;
+    }
+
+    /**
+     * Rango [primero, último] de índices de elementos en las filas visibles, o
+     * null si no hay ninguna.
+     */
+    public int[] getVisibleRange() {
+        VirtualFlow<?> flow = getFlow();
+        if (flow == null || items.isEmpty()) {
+            return null;
+        }
+        IndexedCell<?> first = flow.getFirstVisibleCell();
+        IndexedCell<?> last = flow.getLastVisibleCell();
+        if (first == null || last == null || first.getIndex() < 0) {
+            return null;
+        }
+        int desde = first.getIndex() * columnas;
+        int hasta = Math.min(items.size() - 1, (last.getIndex() + 1) * columnas - 1);
+        return new int[] { desde, hasta };
+    }
+
+    /** Número de columnas actual. */
+    public int getColumnCount() {
+        return columnas;
+    }
+
+    // ==========================================
+    // MÉTODOS AUXILIARES PRIVADOS (HELPERS)
+    // ==========================================
+
+    private void recalcularColumnas() {
+        double disponible = filas.getWidth() - SCROLLBAR_RESERVE;
+        int nuevas = Math.max(1, (int) ((disponible + hgap) / (cardWidth + hgap)));
+        if (nuevas != columnas) {
+            // Conservar el elemento visible al cambiar el número de columnas
+            int primero = getFirstVisibleIndex();
+            columnas = nuevas;
+            actualizarFilas();
+            scrollToIndex(primero);
+        }
+    }
+
+    /**
+     * Sustituye las filas del ListView por otras nuevas. Como cada {@link Fila} es
+     * distinta de la anterior, el ListView vuelve a enlazar sus celdas (y las que
+     * reutilice después) sin recrearlas, como haría {@code ListView.refresh()}.
+     */
+    private void actualizarFilas() {
+        int numFilas = (items.size() + columnas - 1) / columnas;
+        List<Fila> nuevas = new ArrayList<>(numFilas);
+        for (int i = 0; i < numFilas; i++) {
+            nuevas.add(new Fila(i));
+        }
+        indicesFilas.setAll(nuevas);
+    }
+
+    /** Agrupa todas las celdas reasignadas en un mismo pulso en un único aviso. */
+    private void notificarViewport() {
+        if (onViewportChanged == null || viewportPendiente) {
+            return;
+        }
+        viewportPendiente = true;
+        Platform.runLater(() -> {
+            viewportPendiente = false;
+            onViewportChanged.run();
+        });
+    }
+
+    private VirtualFlow<?> getFlow() {
+        Node flow = filas.lookup(".virtual-flow");
+        return flow instanceof VirtualFlow ? (VirtualFlow<?>) flow : null;
+    }
+
+    /**
+     * Elemento del ListView: el índice de una fila. No redefine equals, así que
+     * una fila de una lista nueva nunca es igual a la de la anterior.
+     */
+    private static final class Fila {
+        final int indice;
+
+        Fila(int indice) {
+            this.indice = indice;
+        }
+    }
+
+    /**
+     * Celda del ListView: una fila de tarjetas reutilizables.
+     */
+    private final class FilaCell extends ListCell<Fila> {
+
+        private final HBox fila = new HBox();
+        private final List<Card<T>> tarjetas = new ArrayList<>();
+        // Fábrica con la que se crearon las tarjetas actuales
+        private Supplier<? extends Card<T>> fabrica;
+        // Generación de la rejilla con la que se enlazaron las tarjetas
+        private long enlazada = -1;
+
+        FilaCell() {
+            fila.setAlignment(Pos.TOP_CENTER);
+            getStyleClass().add("card-row");
+        }
+
+        @Override
+        protected void updateItem(Fila filaItem, boolean empty) {
+            super.updateItem(filaItem, empty);
+            setText(null);
+            if (empty || filaItem == null || cardFactory == null) {
+                for (Card<T> tarjeta : tarjetas) {
+                    tarjeta.update(null);
+                }
+                setGraphic(null);
+                return;
+            }
+
+            ajustarTarjetas();
+            int inicio = filaItem.indice * columnas;
+            for (int c = 0; c < columnas; c++) {
+                Card<T> tarjeta = tarjetas.get(c);
+                int idx = inicio + c;
+                if (idx < items.size()) {
+                    tarjeta.update(items.get(idx));
+                    tarjeta.getNode().setVisible(true);
+                } else {
+                    // Última fila incompleta: el hueco se mantiene para alinear
+                    tarjeta.update(null);
+                    tarjeta.getNode().setVisible(false);
+                }
+            }
+            setGraphic(fila);
+            enlazada = generacion;
+            notificarViewport();
+        }
+
+        /**
+         * Al reutilizar una celda para la misma fila, el ListView no vuelve a
+         * enlazarla; si entretanto hubo un refresh(Predicate), se enlaza aquí.
+         */
+        @Override
+        public void updateIndex(int i) {
+            super.updateIndex(i);
+            if (!isEmpty() && getItem() != null && enlazada != generacion) {
+                updateItem(getItem(), false);
+            }
+        }
+
+        /** Vuelve a enlazar las tarjetas de la fila cuyo elemento cumple la condición. */
+        void refrescar(Predicate<? super T> afectado) {
+            Fila filaItem = getItem();
+            if (isEmpty() || filaItem == null) {
+                return;
+            }
+            enlazada = generacion;
+            int inicio = filaItem.indice * columnas;
+            for (int c = 0; c < tarjetas.size(); c++) {
+                int idx = inicio + c;
+                if (idx < items.size() && afectado.test(items.get(idx))) {
+                    tarjetas.get(c).update(items.get(idx));
+                }
+            }
+        }
+
+        /** Crea o descarta tarjetas hasta tener una por columna. */
+        private void ajustarTarjetas() {
+            fila.setSpacing(hgap);
+            fila.setPadding(new Insets(vgap / 2, 0, vgap / 2, 0));
+            if (fabrica != cardFactory) {
+                // Ha cambiado la fábrica: las tarjetas anteriores no sirven
+                for (Card<T> tarjeta : tarjetas) {
+                    tarjeta.update(null);
+                }
+                tarjetas.clear();
+                fila.getChildren().clear();
+                fabrica = cardFactory;
+            }
+            while (tarjetas.size() < columnas) {
+                Card<T> tarjeta = cardFactory.get();
+                tarjetas.add(tarjeta);
+                fila.getChildren().add(tarjeta.getNode());
+            }
+            while (tarjetas.size() > columnas) {
+                Card<T> sobrante = tarjetas.remove(tarjetas.size() - 1);
+                sobrante.update(null);
+                fila.getChildren().remove(sobrante.getNode());
+            }
+        }
+    }
+}
@@ -2,6 +2,8 @@ package org.GaizkaFrost.controllers;
 
 import org.GaizkaFrost.models.Personaje;
 import org.GaizkaFrost.services.HarryPotterAPI;
+import org.GaizkaFrost.services.ImageCache;
+import org.GaizkaFrost.services.MutationOutbox;
 import org.GaizkaFrost.App;
 import org.GaizkaFrost.services.ReportService;
 import org.slf4j.Logger;
@@ -10,7 +12,6 @@ import org.slf4j.LoggerFactory;
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 
 import java.io.IOException;
@@ -130,8 +131,8 @@ public class DetailController {
     }
 
     /**
-     * Alterna el estado de favorito del personaje actual llamando a la API.
-     * Actualiza la interfaz según el resultado.
+     * Alterna el estado de favorito del personaje actual. El cambio se ve al
+     * instante y se envía al backend en segundo plano ({@link MutationOutbox}).
      */
     private void toggleFavorite() {
         if (currentPersonaje == null) {
@@ -139,24 +140,11 @@ public class DetailController {
             return;
         }
 
-        logger.info("Toggling favorite for ID: {}", currentPersonaje.getApiId());
-
-        try {
-            boolean success = HarryPotterAPI.toggleFavorite(currentPersonaje.getApiId());
-            logger.debug("API call success? {}", success);
-
-            if (success) {
-                boolean oldState = currentPersonaje.isFavorite();
-                currentPersonaje.setFavorite(!oldState);
-                logger.info("Toggled favorite state from {} to {} for {}", oldState, !oldState,
-                        currentPersonaje.getNombre());
-                updateFavoriteUI();
-            } else {
-                logger.warn("Toggle favorite API request failed for {}", currentPersonaje.getApiId());
-            }
-        } catch (Exception e) {
-            logger.error("Exception in toggleFavorite: {}", e.getMessage(), e);
-        }
+        boolean favorito = !currentPersonaje.isFavorite();
+        currentPersonaje.setFavorite(favorito);
+        updateFavoriteUI();
+        MutationOutbox.setFavorite(currentPersonaje.getApiId(), favorito);
+        logger.info("Favorite set to {} for {}", favorito, currentPersonaje.getNombre());
     }
 
     public void setDarkMode(boolean isDarkMode) {
@@ -190,6 +178,8 @@ public class DetailController {
 
     /**
      * Recibe un objeto Personaje y rellena los campos de la interfaz con sus datos.
+     * Si viene de la lista resumida, sus detalles se piden al servidor y se
+     * muestran al llegar (y se quedan en el personaje para la próxima vez).
      *
      * @param p El personaje a mostrar.
      */
@@ -202,6 +192,8 @@ public class DetailController {
         if (btnEditar != null) {
             btnEditar.setVisible(loggedIn);
             btnEditar.setManaged(loggedIn);
+            // Sin los detalles, guardar desde el formulario los borraría
+            btnEditar.setDisable(p.isResumen());
         }
         if (btnEliminar != null) {
             btnEliminar.setVisible(loggedIn);
@@ -210,12 +202,7 @@ public class DetailController {
 
         lblNombre.setText(p.getNombre());
 
-        if (p.getImagenUrl() != null && !p.getImagenUrl().isEmpty()) {
-            try {
-                imgGrande.setImage(new Image(p.getImagenUrl(), true));
-            } catch (Exception ignored) {
-            }
-        }
+        ImageCache.bind(imgGrande, p.getApiId(), p.getImagenUrl(), ImageCache.FULL_SIZE);
 
         lblBorn.setText(nullToDash(p.getBorn()));
         lblDied.setText(nullToDash(p.getDied()));
@@ -229,6 +216,35 @@ public class DetailController {
         lblAlias.setText(nullToDash(p.getAlias()));
         lblTitles.setText(nullToDash(p.getTitles()));
         lblWand.setText(nullToDash(p.getWand()));
+
+        if (p.isResumen()) {
+            cargarDetalles(p);
+        }
+    }
+
+    /**
+     * Pide la ficha completa de un personaje resumido y, al llegar, vuelve a
+     * pintar la vista si sigue mostrándolo.
+     */
+    private void cargarDetalles(Personaje p) {
+        HarryPotterAPI.fetchCharacterAsync(p.getApiId()).whenComplete((completo, ex) -> {
+            javafx.application.Platform.runLater(() -> {
+                if (ex != null) {
+                    logger.error("Error loading details for {}: {}", p.getApiId(), ex.getMessage());
+                    return;
+                }
+                if (completo == null) {
+                    logger.warn("Character {} no longer exists", p.getApiId());
+                    return;
+                }
+                if (p.isResumen()) {
+                    p.copiarDetalles(completo);
+                }
+                if (p == currentPersonaje) {
+                    setPersonaje(p);
+                }
+            });
+        });
     }
 
     /**
@@ -268,30 +284,15 @@ public class DetailController {
 
         if (confirmacion.showAndWait()
                 .orElse(javafx.scene.control.ButtonType.CANCEL) == javafx.scene.control.ButtonType.OK) {
-            new Thread(() -> {
-                try {
-                    boolean success = HarryPotterAPI.deleteCharacter(currentPersonaje.getApiId());
-                    javafx.application.Platform.runLater(() -> {
-                        if (success) {
-                            mostrarAlerta("Info", App.getBundle().getString("detail.delete.success"));
-                            // Volver a la vista principal
-                            try {
-                                App.setRoot("Main_view", "Anuario Hogwarts");
-                            } catch (IOException e) {
-                                logger.error("Error returning to main view after deletion: {}", e.getMessage(), e);
-                            }
-                        } else {
-                            mostrarAlerta(App.getBundle().getString("error.title"),
-                                    App.getBundle().getString("detail.delete.error"));
-                        }
-                    });
-                } catch (Exception e) {
-                    javafx.application.Platform.runLater(() -> {
-                        mostrarAlerta(App.getBundle().getString("error.title"), "Error: " + e.getMessage());
-                    });
-                    logger.error("Error during character deletion: {}", e.getMessage(), e);
-                }
-            }).start();
+            // Se envía en segundo plano; la vista principal ya no lo muestra
+            MutationOutbox.delete(currentPersonaje.getApiId());
+            mostrarAlerta("Info", App.getBundle().getString("detail.delete.success"));
+            // Volver a la vista principal
+            try {
+                App.setRoot("Main_view", "Anuario Hogwarts");
+            } catch (IOException e) {
+                logger.error("Error returning to main view after deletion: {}", e.getMessage(), e);
+            }
         }
     }
 
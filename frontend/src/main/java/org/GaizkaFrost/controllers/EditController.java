@@ -1,5 +1,6 @@
 package org.GaizkaFrost.controllers;
 
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
@@ -9,6 +10,8 @@ import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import org.GaizkaFrost.models.Personaje;
 import org.GaizkaFrost.services.HarryPotterAPI;
+import org.GaizkaFrost.services.ImageCache;
+import org.GaizkaFrost.services.MutationOutbox;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import org.GaizkaFrost.App;
@@ -238,11 +241,7 @@ public class EditController {
 
         if (p.getImagenUrl() != null && !p.getImagenUrl().isEmpty()) {
             currentImageUrl = p.getImagenUrl();
-            try {
-                imgPreview.setImage(new Image(currentImageUrl, true));
-            } catch (Exception e) {
-                logger.error("Error loading image from URL {}: {}", currentImageUrl, e.getMessage());
-            }
+            ImageCache.bind(imgPreview, p.getApiId(), currentImageUrl, ImageCache.FULL_SIZE);
         }
     }
 
@@ -266,6 +265,7 @@ public class EditController {
         File file = fileChooser.showOpenDialog(btnSeleccionarFoto.getScene().getWindow());
         if (file != null) {
             selectedImageFile = file;
+            ImageCache.unbind(imgPreview); // Que no la sobrescriba una carga pendiente
             imgPreview.setImage(new Image(file.toURI().toString()));
         }
     }
@@ -347,58 +347,75 @@ public class EditController {
             json.addProperty("image", "https://via.placeholder.com/300x400?text=No+Image");
         }
 
-        boolean success;
-        String characterId = null;
-        try {
-            if (currentPersonaje != null) {
-                // Editing
-                characterId = currentPersonaje.getApiId();
-                success = HarryPotterAPI.editCharacter(characterId, json);
+        if (currentPersonaje != null) {
+            // Editing: se aplica al momento y se envía en segundo plano
+            // (MutationOutbox). Si hay imagen nueva, la URL la fija la subida.
+            if (!HarryPotterAPI.isLoggedIn()) {
+                lblError.setText(App.getBundle().getString("edit.error.server"));
+                return;
+            }
+            String characterId = currentPersonaje.getApiId();
+            if (selectedImageFile != null) {
+                json.remove("image");
+            }
+            MutationOutbox.edit(characterId, json);
+            // Actualizar el objeto local para que la vista de detalles se refresque al momento
+            updateLocalModel();
+            subirImagenYTerminar(characterId);
+            return;
+        }
+
+        // Adding: el id lo asigna el servidor. La petición no bloquea el hilo de
+        // JavaFX; el botón se deshabilita para no enviar el alta dos veces
+        btnGuardar.setDisable(true);
+        HarryPotterAPI.addCharacterAsync(json).whenComplete((characterId, ex) -> Platform.runLater(() -> {
+            if (ex != null) {
+                btnGuardar.setDisable(false);
+                logger.error("Error saving character: {}", ex.getMessage(), ex);
+                lblError.setText(App.getBundle().getString("error.title") + ": " + ex.getMessage());
+            } else if (characterId == null) {
+                btnGuardar.setDisable(false);
+                lblError.setText(App.getBundle().getString("edit.error.server"));
             } else {
-                // Adding
-                characterId = HarryPotterAPI.addCharacter(json);
-                success = (characterId != null);
+                subirImagenYTerminar(characterId);
             }
+        }));
+    }
 
-            if (success) {
-                // If editing, update the local object so DetailView can refresh immediately
+    /**
+     * Sube la imagen seleccionada (si la hay) en segundo plano y, al terminar,
+     * avisa del guardado y cierra la ventana. Un fallo de la subida no anula el
+     * guardado de los datos.
+     */
+    private void subirImagenYTerminar(String characterId) {
+        if (selectedImageFile == null) {
+            terminarGuardado();
+            return;
+        }
+        File imagen = selectedImageFile;
+        btnGuardar.setDisable(true);
+        lblError.setText("Subiendo imagen...");
+        HarryPotterAPI.uploadImageAsync(characterId, imagen).whenComplete((ok, ex) -> Platform.runLater(() -> {
+            if (ex != null) {
+                logger.error("Error uploading image: {}", ex.getMessage());
+            } else if (!Boolean.TRUE.equals(ok)) {
+                logger.warn("Image upload failed for character {}", characterId);
+            } else {
+                // La imagen anterior ya no es válida en ninguna caché
+                ImageCache.invalidate(characterId);
                 if (currentPersonaje != null) {
-                    updateLocalModel();
-                }
-
-                // If an image was selected, upload it now
-                if (selectedImageFile != null) {
-                    try {
-                        lblError.setText("Subiendo imagen...");
-                        boolean uploadSuccess = HarryPotterAPI.uploadImage(characterId, selectedImageFile);
-                        if (!uploadSuccess) {
-                            logger.warn("Image upload failed for character {}", characterId);
-                        } else {
-                            // Update image URL in local model if upload success (assuming predictable path
-                            // or need fetch)
-                            // For now, assume reload will handle image eventually, or set temp file URI
-                            currentPersonaje.setImagenUrl(selectedImageFile.toURI().toString());
-                        }
-                    } catch (Exception e) {
-                        logger.error("Error uploading image: {}", e.getMessage());
-                    }
-                } else if (currentImageUrl == null
-                        && (currentPersonaje == null || currentPersonaje.getImagenUrl() == null)) {
-                    // If we set a placeholder in JSON, maybe update model too?
-                    // Not critical.
+                    currentPersonaje.setImagenUrl(imagen.toURI().toString());
                 }
-
-                if (onSaveSuccess != null) {
-                    onSaveSuccess.run();
-                }
-                closeWindow();
-            } else {
-                lblError.setText(App.getBundle().getString("edit.error.server"));
             }
-        } catch (Exception e) {
-            logger.error("Error saving character: {}", e.getMessage(), e);
-            lblError.setText(App.getBundle().getString("error.title") + ": " + e.getMessage());
+            terminarGuardado();
+        }));
+    }
+
+    private void terminarGuardado() {
+        if (onSaveSuccess != null) {
+            onSaveSuccess.run();
         }
+        closeWindow();
     }
 
     private void updateLocalModel() {
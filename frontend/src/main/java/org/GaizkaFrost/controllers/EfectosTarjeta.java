@@ -0,0 +1,158 @@
+package org.GaizkaFrost.controllers;
+
+import javafx.animation.ScaleTransition;
+import javafx.scene.Node;
+import javafx.scene.control.Button;
+import javafx.scene.control.Tooltip;
+import javafx.util.Duration;
+import org.GaizkaFrost.App;
+import org.GaizkaFrost.models.Personaje;
+
+import java.text.MessageFormat;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Efectos de hover compartidos por todas las tarjetas de una vista.
+ * Como solo hay una tarjeta bajo el ratón a la vez, basta con una animación de
+ * entrada y otra de salida que se redirigen a la tarjeta afectada, y con un par
+ * de tooltips que se crean al primer hover y se reutilizan después. El texto
+ * del tooltip solo se formatea cuando el usuario pasa por encima.
+ *
+ * @author Gaizka
+ * @author Xiker
+ * @author Diego
+ */
+class EfectosTarjeta {
+
+    private static final Duration DURACION = Duration.millis(200);
+    private static final double ESCALA_HOVER = 1.05;
+    private static final int MAX_TOOLTIPS = 4;
+
+    private final ScaleTransition entrada = new ScaleTransition(DURACION);
+    private final ScaleTransition salida = new ScaleTransition(DURACION);
+    private final Deque<Tooltip> tooltipsLibres = new ArrayDeque<>();
+
+    private Node actual;
+    private Tooltip tooltipTarjeta;
+    private Tooltip tooltipBoton;
+    private Button botonActual;
+
+    EfectosTarjeta() {
+        entrada.setToX(ESCALA_HOVER);
+        entrada.setToY(ESCALA_HOVER);
+        salida.setToX(1.0);
+        salida.setToY(1.0);
+    }
+
+    /**
+     * El ratón entra en una tarjeta: se escala y recibe sus tooltips.
+     *
+     * @param tarjeta     Nodo raíz de la tarjeta.
+     * @param btnDetalles Botón de detalles de la tarjeta.
+     * @param p           Personaje que muestra.
+     */
+    void entrar(Node tarjeta, Button btnDetalles, Personaje p) {
+        if (actual != null && actual != tarjeta) {
+            salir(actual);
+        }
+        actual = tarjeta;
+
+        if (salida.getNode() == tarjeta) {
+            salida.stop();
+        }
+        entrada.stop();
+        entrada.setNode(tarjeta);
+        entrada.playFromStart();
+
+        if (p != null) {
+            instalarTooltips(tarjeta, btnDetalles, p);
+        }
+    }
+
+    /**
+     * El ratón sale de una tarjeta: vuelve a su tamaño y libera los tooltips.
+     */
+    void salir(Node tarjeta) {
+        if (tarjeta != actual) {
+            return;
+        }
+        actual = null;
+        desinstalarTooltips(tarjeta);
+
+        if (entrada.getNode() == tarjeta) {
+            entrada.stop();
+        }
+        // Si otra tarjeta seguía encogiéndose, se deja directamente en su tamaño
+        Node anterior = salida.getNode();
+        salida.stop();
+        if (anterior != null && anterior != tarjeta) {
+            anterior.setScaleX(1.0);
+            anterior.setScaleY(1.0);
+        }
+        salida.setNode(tarjeta);
+        salida.playFromStart();
+    }
+
+    /**
+     * La tarjeta pasa a mostrar otro personaje (se ha reutilizado): se cancela
+     * cualquier efecto que tuviera.
+     */
+    void reiniciar(Node tarjeta) {
+        if (tarjeta == actual) {
+            actual = null;
+            desinstalarTooltips(tarjeta);
+        }
+        if (entrada.getNode() == tarjeta) {
+            entrada.stop();
+        }
+        if (salida.getNode() == tarjeta) {
+            salida.stop();
+        }
+        tarjeta.setScaleX(1.0);
+        tarjeta.setScaleY(1.0);
+    }
+
+    // ==========================================
+    // MÉTODOS AUXILIARES PRIVADOS (HELPERS)
+    // ==========================================
+
+    private void instalarTooltips(Node tarjeta, Button btnDetalles, Personaje p) {
+        tooltipTarjeta = obtenerTooltip();
+        tooltipTarjeta.setText(
+                MessageFormat.format(App.getBundle().getString("card.tooltip.info"), p.getNombre()));
+        Tooltip.install(tarjeta, tooltipTarjeta);
+
+        tooltipBoton = obtenerTooltip();
+        tooltipBoton.setText(
+                MessageFormat.format(App.getBundle().getString("card.tooltip.details"), p.getNombre()));
+        btnDetalles.setTooltip(tooltipBoton);
+        botonActual = btnDetalles;
+    }
+
+    private void desinstalarTooltips(Node tarjeta) {
+        if (tooltipTarjeta != null) {
+            Tooltip.uninstall(tarjeta, tooltipTarjeta);
+            liberarTooltip(tooltipTarjeta);
+            tooltipTarjeta = null;
+        }
+        if (tooltipBoton != null) {
+            botonActual.setTooltip(null);
+            liberarTooltip(tooltipBoton);
+            tooltipBoton = null;
+            botonActual = null;
+        }
+    }
+
+    private Tooltip obtenerTooltip() {
+        Tooltip tooltip = tooltipsLibres.poll();
+        return tooltip != null ? tooltip : new Tooltip();
+    }
+
+    private void liberarTooltip(Tooltip tooltip) {
+        tooltip.hide();
+        if (tooltipsLibres.size() < MAX_TOOLTIPS) {
+            tooltipsLibres.push(tooltip);
+        }
+    }
+}
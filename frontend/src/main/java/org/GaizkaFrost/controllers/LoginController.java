@@ -67,8 +67,7 @@ public class LoginController {
 
     /**
      * Maneja la acción del botón principal (Entrar o Registrarse).
-     * Valida entradas y realiza la llamada a la API correspondiente en un hilo
-     * separado.
+     * Valida entradas y realiza la llamada asíncrona a la API correspondiente.
      */
     @FXML
     public void onLoginButtonClick(javafx.event.ActionEvent event) {
@@ -87,57 +86,69 @@ public class LoginController {
 
             lblStatus.setText(App.getBundle().getString("login.status.processing"));
             btnAccion.setDisable(true);
-            logger.debug("Starting background thread for authentication");
-
-            new Thread(() -> {
-                logger.debug("Auth thread started");
-                try {
-                    if (isRegister) {
-                        String master = txtMasterPassword.getText();
-                        if (master.isEmpty()) {
-                            updateStatus("Missing master password.");
-                            return;
-                        }
-                        boolean ok = HarryPotterAPI.register(user, pass, master);
-                        logger.info("Register result: {}", ok);
-                        if (ok) {
-                            updateIO(() -> {
-                                chkRegistro.setSelected(false);
-                                lblStatus.setText("Registro exitoso. Por favor identifícate.");
-                                txtPassword.clear();
-                            });
-                        } else {
-                            updateStatus("Error en registro. Verifica la clave maestra.");
-                        }
+            logger.debug("Starting asynchronous authentication");
+
+            if (isRegister) {
+                String master = txtMasterPassword.getText();
+                if (master.isEmpty()) {
+                    updateStatus("Missing master password.");
+                    return;
+                }
+                HarryPotterAPI.registerAsync(user, pass, master).whenComplete((ok, ex) -> {
+                    if (ex != null) {
+                        onAuthError(ex);
+                        return;
+                    }
+                    logger.info("Register result: {}", ok);
+                    if (ok) {
+                        updateIO(() -> {
+                            chkRegistro.setSelected(false);
+                            lblStatus.setText("Registro exitoso. Por favor identifícate.");
+                            txtPassword.clear();
+                        });
                     } else {
-                        logger.info("Attempting login for {}", user);
-                        String token = HarryPotterAPI.login(user, pass);
-                        logger.debug("Token received: {}", (token != null ? "YES" : "NO"));
-
-                        if (token != null) {
-                            HarryPotterAPI.setToken(token, user);
-                            updateIO(() -> {
-                                logger.info("Login success - closing window");
-                                if (onSuccessCallback != null)
-                                    onSuccessCallback.accept(user);
-                                ((Stage) btnAccion.getScene().getWindow()).close();
-                            });
-                        } else {
-                            logger.warn("Login failed - Invalid credentials for user: {}", user);
-                            updateStatus(App.getBundle().getString("login.status.error"));
-                        }
+                        updateStatus("Error en registro. Verifica la clave maestra.");
                     }
-                } catch (Exception ex) {
-                    logger.error("Exception in login thread: {}", ex.getMessage(), ex);
-                    updateStatus(MessageFormat.format(App.getBundle().getString("login.status.connection_error"),
-                            ex.getMessage() != null ? ex.getMessage() : "Unknown Error"));
-                }
-            }).start();
+                });
+            } else {
+                logger.info("Attempting login for {}", user);
+                HarryPotterAPI.loginAsync(user, pass).whenComplete((token, ex) -> {
+                    if (ex != null) {
+                        onAuthError(ex);
+                        return;
+                    }
+                    logger.debug("Token received: {}", (token != null ? "YES" : "NO"));
+
+                    if (token != null) {
+                        HarryPotterAPI.setToken(token, user);
+                        updateIO(() -> {
+                            logger.info("Login success - closing window");
+                            if (onSuccessCallback != null)
+                                onSuccessCallback.accept(user);
+                            ((Stage) btnAccion.getScene().getWindow()).close();
+                        });
+                    } else {
+                        logger.warn("Login failed - Invalid credentials for user: {}", user);
+                        updateStatus(App.getBundle().getString("login.status.error"));
+                    }
+                });
+            }
         } catch (Exception e) {
             logger.error("Exception in onLoginButtonClick main thread: {}", e.getMessage(), e);
         }
     }
 
+    /**
+     * Muestra el error de conexión producido durante la autenticación.
+     *
+     * @param ex Excepción con la que terminó la llamada asíncrona.
+     */
+    private void onAuthError(Throwable ex) {
+        logger.error("Exception during authentication: {}", ex.getMessage(), ex);
+        updateStatus(MessageFormat.format(App.getBundle().getString("login.status.connection_error"),
+                ex.getMessage() != null ? ex.getMessage() : "Unknown Error"));
+    }
+
     /**
      * Actualiza el mensaje de estado en la interfaz (hilo UI).
      *
@@ -1,7 +1,9 @@
 package org.GaizkaFrost.controllers;
 
+import javafx.animation.PauseTransition;
 import javafx.application.Platform;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
@@ -16,10 +18,6 @@ import javafx.scene.control.Label;
 import javafx.scene.control.MenuItem;
 import javafx.scene.control.RadioMenuItem;
 import javafx.scene.control.TextField;
-import javafx.scene.control.ScrollPane;
-import javafx.scene.image.Image;
-import javafx.scene.image.ImageView;
-import javafx.scene.layout.FlowPane;
 import javafx.scene.layout.VBox;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.StackPane;
@@ -30,19 +28,32 @@ import java.text.MessageFormat;
 import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
 
 import com.google.gson.JsonObject;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.GaizkaFrost.App;
+import org.GaizkaFrost.models.CharacterChanges;
+import org.GaizkaFrost.models.CharacterQuery;
 import org.GaizkaFrost.models.Personaje;
+import org.GaizkaFrost.services.BackgroundTasks;
 import org.GaizkaFrost.services.HarryPotterAPI;
+import org.GaizkaFrost.services.ImageCache;
+import org.GaizkaFrost.services.ImagePrefetcher;
+import org.GaizkaFrost.services.MutationOutbox;
+import org.GaizkaFrost.services.SearchIndex;
 import org.GaizkaFrost.services.ReportService;
 
 /**
@@ -81,18 +92,8 @@ public class MainController implements Initializable {
     @FXML
     private VBox filtersBar;
     @FXML
-    private FlowPane contenedorTarjetas;
+    private CardGrid<Personaje> gridTarjetas;
 
-    @FXML
-    private Button btnPaginaAnterior;
-    @FXML
-    private Button btnPaginaSiguiente;
-    @FXML
-    private TextField txtPagina;
-    @FXML
-    private TextField txtPaginaSidebar;
-    @FXML
-    private Label lblTotalPaginas;
     @FXML
     private Label statusBar;
     @FXML
@@ -108,14 +109,48 @@ public class MainController implements Initializable {
 
     private List<Personaje> listaFiltrada = new ArrayList<>();
 
-    private int paginaActual = 0;
+    // Selección múltiple de tarjetas (acciones en bloque, p. ej. favoritos)
+    private SeleccionTarjetas seleccion;
+
+    // Índice de búsqueda sobre masterData; se reconstruye tras cada cambio de datos
+    private SearchIndex indiceBusqueda;
+    private long versionDatos = 0; // Se incrementa con cada cambio de masterData
+
+    // Filtrado asíncrono: los cambios rápidos se agrupan (debounce) y solo se
+    // publica el resultado de la última generación
+    private static final long FILTER_DEBOUNCE_MS = Long.getLong("anuario.filter.debounceMs", 150);
+    private final PauseTransition filtroDebounce = new PauseTransition(
+            javafx.util.Duration.millis(FILTER_DEBOUNCE_MS));
+    private long generacionFiltro = 0; // Solo se usa en el hilo de JavaFX
+    private CompletableFuture<ResultadoFiltro> filtroEnCurso;
+
+    // Precarga de miniaturas de las filas contiguas a las visibles
+    private static final int PREFETCH_MAX_CONCURRENT = Integer.getInteger("anuario.prefetch.maxConcurrent", 2);
+    private final ImagePrefetcher precargador = new ImagePrefetcher(ImageCache.THUMBNAIL_WIDTH,
+            PREFETCH_MAX_CONCURRENT);
+
+    // Posición (índice del primer personaje visible) a restaurar tras el próximo
+    // filtrado, o -1 para conservar la actual
+    private int indiceRestaurar = -1;
     // Estado de filtros guardado
     private static String savedSearch = "";
     private static String savedHouse = null;
     private static String savedStatus = null;
     private static boolean savedFavorite = false;
 
-    private static final int PERSONAJES_POR_PAGINA = 20;
+    // Personajes que se muestran como vista previa mientras se carga el resto
+    private static final int TAMANO_VISTA_PREVIA = 20;
+
+    // Modo remoto: con bases de datos muy grandes no se descarga la lista
+    // completa; el servidor filtra y ordena, y las páginas se piden según se
+    // desplaza la rejilla
+    private static final int REMOTE_QUERY_THRESHOLD = Integer.getInteger("anuario.remoteQuery.threshold", 20000);
+    private static final int TAMANO_PAGINA_REMOTA = 200;
+    private boolean modoRemoto = false;
+    private CharacterQuery consultaRemota;
+    private String cursorRemoto; // null si no hay más páginas
+    private boolean cargandoPagina = false;
+    private List<String> casasRemotas;
 
     @FXML
     private MenuItem menuLogin;
@@ -139,8 +174,6 @@ public class MainController implements Initializable {
     private RadioMenuItem menuFontLarge;
     @FXML
     private Label lblUsuario;
-    @FXML
-    private ScrollPane scrollPane;
 
     private boolean isLoggedIn = false;
     private String currentUser = null;
@@ -157,6 +190,12 @@ public class MainController implements Initializable {
     @Override
     public void initialize(URL location, ResourceBundle resources) {
 
+        // Cualquier cambio en los datos invalida el índice de búsqueda
+        masterData.addListener((ListChangeListener<Personaje>) c -> {
+            indiceBusqueda = null;
+            versionDatos++;
+        });
+
         // Setup Font Size Actions
         if (menuFontSmall != null) {
             menuFontSmall.setOnAction(e -> setAppFontSize(12)); // Small
@@ -173,21 +212,18 @@ public class MainController implements Initializable {
                 menuFontMedium.setSelected(true);
         }
 
-        // Aumentar velocidad de desplazamiento
-        if (scrollPane != null) {
-            scrollPane.addEventFilter(javafx.scene.input.ScrollEvent.SCROLL, event -> {
-                if (event.getDeltaY() != 0) {
-                    double delta = event.getDeltaY() * 3.0; // 3x más rápido
-                    double height = scrollPane.getContent().getBoundsInLocal().getHeight();
-                    double vValue = scrollPane.getVvalue();
-                    // Prevenir división por cero
-                    if (height > 0) {
-                        scrollPane.setVvalue(vValue + -delta / height);
-                        event.consume(); // Consumir evento para prevenir desplazamiento lento por defecto
-                    }
-                }
-            });
-        }
+        // Rejilla virtualizada: solo existen las tarjetas visibles y se reutilizan
+        // al desplazarse, así que no hace falta paginar
+        gridTarjetas.setCardWidth(TarjetaPersonaje.ANCHO);
+        gridTarjetas.setGaps(12, 12);
+        gridTarjetas.setScrollMultiplier(3.0); // 3x más rápido
+        // Animación de hover y tooltips compartidos por todas las tarjetas
+        EfectosTarjeta efectos = new EfectosTarjeta();
+        seleccion = new SeleccionTarjetas(gridTarjetas, this::marcarFavoritos);
+        seleccion.setOnCambio(n -> statusBar.setText(n == 0 ? App.getBundle().getString("main.status.ready")
+                : MessageFormat.format(App.getBundle().getString("main.status.selection"), n)));
+        gridTarjetas.setCardFactory(() -> new TarjetaPersonaje(this::abrirDetalles, efectos, seleccion));
+        gridTarjetas.setOnViewportChanged(this::precargarImagenes);
 
         // Verificar si hay una sesión activa previa (cuando se vuelve de otra vista)
         if (HarryPotterAPI.isLoggedIn()) {
@@ -249,9 +285,18 @@ public class MainController implements Initializable {
                 App.getBundle().getString("combo.status.deceased"),
                 App.getBundle().getString("combo.house.unknown"));
 
+        // Cambios enviados en segundo plano que el backend no aceptó: se avisa y se
+        // vuelve a cargar el personaje para deshacer el cambio local
+        MutationOutbox.setOnRejected((id, motivo) -> Platform.runLater(() -> {
+            statusBar.setText(MessageFormat.format(
+                    App.getBundle().getString("main.status.change_rejected"), id, motivo));
+            recargarPersonaje(id);
+        }));
+
         // Intentar sincronizar datos de la nube al inicio (Pull)
         setCargando(true); // Mostrar spinner mientras se intenta el pull
-        new Thread(() -> {
+        mostrarCopiaLocal();
+        BackgroundTasks.run(BackgroundTasks.Workload.NETWORK, () -> {
             // 1. Esperar a que el backend esté listo (Max 15 segundos)
             logger.info("Waiting for backend to be ready...");
             int retries = 0;
@@ -263,7 +308,10 @@ public class MainController implements Initializable {
                 }
                 try {
                     Thread.sleep(1000); // Esperar 1 segundo
-                } catch (InterruptedException ignored) {
+                } catch (InterruptedException e) {
+                    // La aplicación se está cerrando
+                    Thread.currentThread().interrupt();
+                    return;
                 }
                 retries++;
             }
@@ -284,16 +332,10 @@ public class MainController implements Initializable {
                 logger.warn("Sync failed (Offline?). Loading local data...");
                 Platform.runLater(this::sincronizar);
             }
-        }).start();
-
-        // Filtros
-        txtBuscar.textProperty().addListener((obs, o, n) -> aplicarFiltros());
-        comboCasa.valueProperty().addListener((obs, o, n) -> aplicarFiltros());
-        comboEstado.valueProperty().addListener((obs, o, n) -> aplicarFiltros());
-        txtPatronus.textProperty().addListener((obs, o, n) -> aplicarFiltros());
-        checkFavoritos.selectedProperty().addListener((obs, o, n) -> aplicarFiltros());
+        });
 
-        // Restaurar estado de filtros si existe
+        // Restaurar estado de filtros si existe (antes de registrar los listeners,
+        // para no filtrar ni perder la posición guardada mientras no hay datos)
         if (savedSearch != null)
             txtBuscar.setText(savedSearch);
         if (savedHouse != null)
@@ -302,6 +344,14 @@ public class MainController implements Initializable {
             comboEstado.setValue(savedStatus);
         checkFavoritos.setSelected(savedFavorite);
 
+        // Filtros (con debounce: una ráfaga de cambios produce un único filtrado)
+        filtroDebounce.setOnFinished(e -> aplicarFiltros());
+        txtBuscar.textProperty().addListener((obs, o, n) -> programarFiltrado());
+        comboCasa.valueProperty().addListener((obs, o, n) -> programarFiltrado());
+        comboEstado.valueProperty().addListener((obs, o, n) -> programarFiltrado());
+        txtPatronus.textProperty().addListener((obs, o, n) -> programarFiltrado());
+        checkFavoritos.selectedProperty().addListener((obs, o, n) -> programarFiltrado());
+
         // Listener para el botón de tema
         actualizarIconoTema();
         btnThemeToggle.setOnAction(e -> toggleTheme());
@@ -319,33 +369,6 @@ public class MainController implements Initializable {
 
         btnLimpiar.setOnAction(e -> limpiarFiltros());
 
-        // Paginación
-        btnPaginaAnterior.setOnAction(e -> {
-            paginaActual--;
-            actualizarPagina();
-        });
-
-        btnPaginaSiguiente.setOnAction(e -> {
-            paginaActual++;
-            actualizarPagina();
-        });
-
-        // Listener para el campo de número de página
-        txtPagina.setOnAction(e -> manejarCambioPagina(txtPagina));
-        txtPagina.focusedProperty().addListener((obs, oldVal, newVal) -> {
-            if (!newVal) { // Si pierde el foco
-                manejarCambioPagina(txtPagina);
-            }
-        });
-
-        // Jumper de página (Sidebar)
-        txtPaginaSidebar.setOnAction(e -> manejarCambioPagina(txtPaginaSidebar));
-        txtPaginaSidebar.focusedProperty().addListener((obs, oldVal, newVal) -> {
-            if (!newVal) {
-                manejarCambioPagina(txtPaginaSidebar);
-            }
-        });
-
         btnSincronizar.setOnAction(e -> sincronizar());
         if (btnAnadir != null) {
             btnAnadir.setOnAction(e -> abrirFormularioAnadir());
@@ -380,45 +403,6 @@ public class MainController implements Initializable {
         }
     }
 
-    /**
-     * Maneja el cambio manual de página desde el TextField.
-     */
-    private void manejarCambioPagina(TextField source) {
-        if (source == null)
-            return;
-
-        try {
-            int nuevaPagina = Integer.parseInt(source.getText()) - 1;
-            int totalPaginas = (int) Math.ceil(listaFiltrada.size() / (double) PERSONAJES_POR_PAGINA);
-
-            if (nuevaPagina < 0)
-                nuevaPagina = 0;
-            if (nuevaPagina >= totalPaginas)
-                nuevaPagina = totalPaginas - 1;
-
-            if (nuevaPagina != paginaActual) {
-                paginaActual = nuevaPagina;
-                actualizarPagina();
-            } else {
-                // Even if page didn't change, we might want to restore the text field value
-                // in case user typed "999" and we clamped it to "10",
-                // but we DON'T want to re-render the whole page (flicker).
-                source.setText(String.valueOf(paginaActual + 1));
-            }
-
-            // Sync the other text field
-            if (source == txtPagina && txtPaginaSidebar != null) {
-                txtPaginaSidebar.setText(String.valueOf(paginaActual + 1));
-            } else if (source == txtPaginaSidebar && txtPagina != null) {
-                txtPagina.setText(String.valueOf(paginaActual + 1));
-            }
-
-        } catch (NumberFormatException e) {
-            // Restore current page if invalid input
-            source.setText(String.valueOf(paginaActual + 1));
-        }
-    }
-
     @FXML
     private void mostrarLogin() {
         try {
@@ -474,8 +458,8 @@ public class MainController implements Initializable {
             // Apply to current view immediately
             if (root != null) {
                 App.applyTheme(root, "Main_view");
-            } else if (contenedorTarjetas.getScene() != null) {
-                App.applyTheme(contenedorTarjetas.getScene().getRoot(), "Main_view");
+            } else if (gridTarjetas.getScene() != null) {
+                App.applyTheme(gridTarjetas.getScene().getRoot(), "Main_view");
             }
 
             // Restore font size if needed (optional, but good for consistency)
@@ -573,29 +557,38 @@ public class MainController implements Initializable {
         txtPatronus.clear();
         checkFavoritos.setSelected(false);
 
-        // Reset page history
-        App.setLastPage(0);
-        paginaActual = 0;
+        // Volver al principio de la lista
+        App.setLastScrollIndex(0);
 
         aplicarFiltros();
     }
 
+    /**
+     * Reinicia la ventana de debounce: el filtrado se ejecuta cuando pasan
+     * {@code anuario.filter.debounceMs} ms (150 por defecto) sin más cambios.
+     */
+    private void programarFiltrado() {
+        filtroDebounce.playFromStart();
+    }
+
     /**
      * Aplica los filtros (búsqueda, casa, estado, favoritos) a la lista maestra de
      * personajes.
-     * Actualiza `listaFiltrada` y la paginación.
+     * El cálculo se hace en segundo plano; al terminar se actualiza
+     * `listaFiltrada` y la rejilla, salvo que entretanto se haya lanzado un
+     * filtrado más reciente.
      */
     private void aplicarFiltros() {
         aplicarFiltros(true);
     }
 
     private void aplicarFiltros(boolean resetPage) {
-        String texto = txtBuscar.getText() != null ? txtBuscar.getText().toLowerCase().trim() : "";
+        String texto = txtBuscar.getText() != null ? txtBuscar.getText().trim() : "";
         String casa = comboCasa.getValue();
         String unknownLabel = App.getBundle().getString("combo.house.unknown");
         String noneLabel = App.getBundle().getString("combo.house.none");
         String estado = comboEstado.getValue();
-        String patronusBusqueda = txtPatronus.getText() != null ? txtPatronus.getText().toLowerCase().trim() : "";
+        String patronusBusqueda = txtPatronus.getText() != null ? txtPatronus.getText().trim() : "";
         boolean soloFavoritos = checkFavoritos.isSelected();
 
         // 1. Guardar estado para persistencia entre vistas
@@ -606,194 +599,229 @@ public class MainController implements Initializable {
         // savedPatronus se podría añadir si se crea la variable estática, por ahora
         // persistimos lo básico
 
-        List<Personaje> filtrados = new ArrayList<>();
-
-        for (Personaje p : masterData) {
-            boolean coincideTexto = texto.isEmpty()
-                    || p.getNombre().toLowerCase().contains(texto);
-
-            boolean coincideCasa = casa == null || casa.isEmpty();
-            if (!coincideCasa) {
-                if (casa.equals(noneLabel)) {
-                    // "Sin casa" matches null or empty
-                    coincideCasa = (p.getCasa() == null || p.getCasa().trim().isEmpty());
-                } else if (casa.equals(unknownLabel)) {
-                    // "Desconocido" matches explicit "unknown" or "desconocido"
-                    coincideCasa = (p.getCasa() != null && (p.getCasa().toLowerCase().contains("unknown")
-                            || p.getCasa().toLowerCase().contains("desconocido")));
-                } else {
-                    // Regular house name match
-                    coincideCasa = (p.getCasa() != null && p.getCasa().toLowerCase().contains(casa.toLowerCase()));
-                }
+        // Traducir la selección de la UI a una consulta sobre el índice
+        SearchIndex.Query consulta = new SearchIndex.Query()
+                .name(texto)
+                .patronus(patronusBusqueda)
+                .favoritesOnly(soloFavoritos);
+
+        if (casa != null && !casa.isEmpty()) {
+            if (casa.equals(noneLabel)) {
+                // "Sin casa" matches null or empty
+                consulta.noHouse();
+            } else if (casa.equals(unknownLabel)) {
+                // "Desconocido" matches explicit "unknown" or "desconocido"
+                consulta.unknownHouse();
+            } else {
+                // Regular house name match
+                consulta.house(casa);
             }
+        }
 
-            boolean coincideEstado = true;
-            if (estado != null && !estado.isEmpty()) {
-                if (estado.equals(App.getBundle().getString("combo.status.alive"))) {
-                    coincideEstado = "Alive".equalsIgnoreCase(p.getEstado());
-                } else if (estado.equals(App.getBundle().getString("combo.status.deceased"))) {
-                    coincideEstado = "Deceased".equalsIgnoreCase(p.getEstado());
-                } else if (estado.equals(App.getBundle().getString("combo.house.unknown"))) {
-                    // Coincide con null, vacío, "unknown" o "desconocido"
-                    String s = p.getEstado();
-                    coincideEstado = (s == null || s.trim().isEmpty() || "unknown".equalsIgnoreCase(s)
-                            || "desconocido".equalsIgnoreCase(s));
-                } else {
-                    // Fallback
-                    coincideEstado = estado.equalsIgnoreCase(p.getEstado());
-                }
+        if (estado != null && !estado.isEmpty()) {
+            if (estado.equals(App.getBundle().getString("combo.status.alive"))) {
+                consulta.status("Alive");
+            } else if (estado.equals(App.getBundle().getString("combo.status.deceased"))) {
+                consulta.status("Deceased");
+            } else if (estado.equals(App.getBundle().getString("combo.house.unknown"))) {
+                // Coincide con null, vacío, "unknown" o "desconocido"
+                consulta.unknownStatus();
+            } else {
+                // Fallback
+                consulta.status(estado);
             }
+        }
 
-            boolean coincideFavorito = !soloFavoritos || p.isFavorite();
+        // Un filtrado explícito sustituye a cualquiera pendiente o en curso, y las
+        // precargas de la lista anterior ya no sirven
+        filtroDebounce.stop();
+        if (filtroEnCurso != null) {
+            filtroEnCurso.cancel(true);
+        }
+        precargador.cancel();
+        long generacion = ++generacionFiltro;
+
+        if (modoRemoto) {
+            cargarPaginaRemota(crearConsultaRemota(texto, casa, estado, patronusBusqueda, soloFavoritos),
+                    null, generacion, resetPage);
+            return;
+        }
 
-            boolean coincidePatronus = patronusBusqueda.isEmpty()
-                    || (p.getPatronus() != null && p.getPatronus().toLowerCase().contains(patronusBusqueda));
+        // Si hay que reconstruir el índice, se hace con una copia de los datos
+        SearchIndex indice = indiceBusqueda;
+        List<Personaje> datos = indice == null ? new ArrayList<>(masterData) : null;
+        long version = versionDatos;
 
-            if (coincideTexto && coincideCasa && coincideEstado && coincideFavorito && coincidePatronus) {
-                filtrados.add(p);
+        filtroEnCurso = BackgroundTasks.submit(BackgroundTasks.Workload.FILTER, () -> {
+            SearchIndex idx = indice != null ? indice : new SearchIndex(datos);
+            return new ResultadoFiltro(idx, idx.filter(consulta));
+        });
+        filtroEnCurso.whenComplete((resultado, ex) -> Platform.runLater(() -> {
+            if (generacion != generacionFiltro) {
+                return; // Obsoleto: hay un filtrado más reciente
             }
-        }
+            if (ex != null) {
+                logger.error("Error applying filters: {}", ex.getMessage(), ex);
+                return;
+            }
+            if (version == versionDatos) {
+                indiceBusqueda = resultado.indice;
+            }
+            listaFiltrada = resultado.personajes;
 
-        listaFiltrada = filtrados;
+            mostrarResultados();
+            ajustarPosicion(resetPage);
+        }));
+    }
 
+    /**
+     * Tras mostrar un resultado nuevo: vuelve al principio o restaura la posición
+     * pendiente.
+     */
+    private void ajustarPosicion(boolean resetPage) {
         if (resetPage) {
-            paginaActual = 0;
-            // Resetear también la página global de App para no confundir
-            App.setLastPage(0);
+            // Resetear también la posición global de App para no confundir
+            App.setLastScrollIndex(0);
+            gridTarjetas.scrollToIndex(0);
+        } else if (indiceRestaurar >= 0) {
+            gridTarjetas.scrollToIndex(indiceRestaurar);
+            indiceRestaurar = -1;
         }
-
-        actualizarPagina();
     }
 
     /**
-     * Actualiza la vista de tarjetas para mostrar la página actual de resultados.
+     * Traduce la selección de la UI a una consulta para el servidor (modo
+     * remoto), con la misma semántica que el filtrado local.
      */
-    private void actualizarPagina() {
-        contenedorTarjetas.getChildren().clear();
-
-        int total = listaFiltrada.size();
-        if (total == 0) {
-            txtPagina.setText("1");
-            lblTotalPaginas.setText("de 1");
-            btnPaginaAnterior.setDisable(true);
-            btnPaginaSiguiente.setDisable(true);
-            // Solo mostrar mensaje si no se está cargando
-            if (!btnSincronizar.isDisabled()) {
-                statusBar.setText(App.getBundle().getString("main.status.no_results"));
+    private CharacterQuery crearConsultaRemota(String texto, String casa, String estado, String patronus,
+            boolean soloFavoritos) {
+        CharacterQuery query = new CharacterQuery()
+                .size(TAMANO_PAGINA_REMOTA)
+                .text(texto)
+                .patronus(patronus)
+                .favorites(soloFavoritos);
+
+        if (casa != null && !casa.isEmpty()) {
+            if (casa.equals(App.getBundle().getString("combo.house.none"))) {
+                query.house(CharacterQuery.HOUSE_NONE);
+            } else if (casa.equals(App.getBundle().getString("combo.house.unknown"))) {
+                query.house(CharacterQuery.HOUSE_UNKNOWN);
+            } else {
+                query.house(casa);
+            }
+        }
+        if (estado != null && !estado.isEmpty()) {
+            if (estado.equals(App.getBundle().getString("combo.status.alive"))) {
+                query.status(CharacterQuery.STATUS_ALIVE);
+            } else if (estado.equals(App.getBundle().getString("combo.status.deceased"))) {
+                query.status(CharacterQuery.STATUS_DECEASED);
+            } else {
+                query.status(CharacterQuery.STATUS_UNKNOWN);
             }
-            return;
         }
+        return query;
+    }
 
-        int totalPaginas = (int) Math.ceil(total / (double) PERSONAJES_POR_PAGINA);
+    /**
+     * Pide al servidor una página de la consulta remota. La primera página
+     * (cursor null) sustituye los resultados; las siguientes se añaden al final.
+     * Como en el filtrado local, se descarta si entretanto se ha lanzado un
+     * filtrado más reciente.
+     */
+    private void cargarPaginaRemota(CharacterQuery query, String cursor, long generacion, boolean resetPage) {
+        consultaRemota = query;
+        cargandoPagina = true;
+        BackgroundTasks.submit(BackgroundTasks.Workload.NETWORK, () -> HarryPotterAPI.queryCharacters(query, cursor))
+                .whenComplete((pagina, ex) -> Platform.runLater(() -> {
+                    if (generacion != generacionFiltro) {
+                        return; // Obsoleto: hay un filtrado más reciente
+                    }
+                    cargandoPagina = false;
+                    if (ex != null) {
+                        logger.error("Error querying characters: {}", ex.getMessage(), ex);
+                        statusBar.setText("Error al consultar personajes.");
+                        return;
+                    }
+                    cursorRemoto = pagina.getNextCursor();
+                    if (cursor == null) {
+                        listaFiltrada = new ArrayList<>(pagina.getItems());
+                        if (pagina.getHouses() != null && !pagina.getHouses().equals(casasRemotas)) {
+                            casasRemotas = pagina.getHouses();
+                            actualizarComboCasas(casasRemotas);
+                        }
+                    } else {
+                        List<Personaje> ampliada = new ArrayList<>(listaFiltrada.size() + pagina.getItems().size());
+                        ampliada.addAll(listaFiltrada);
+                        ampliada.addAll(pagina.getItems());
+                        listaFiltrada = ampliada;
+                    }
 
-        if (paginaActual < 0)
-            paginaActual = 0;
-        if (paginaActual >= totalPaginas)
-            paginaActual = totalPaginas - 1;
+                    mostrarResultados();
+                    if (cursor == null) {
+                        ajustarPosicion(resetPage);
+                    }
+                }));
+    }
 
-        int inicio = paginaActual * PERSONAJES_POR_PAGINA;
-        int fin = Math.min(inicio + PERSONAJES_POR_PAGINA, total);
+    /**
+     * Resultado de un filtrado en segundo plano junto con el índice usado, que se
+     * conserva para los siguientes filtrados.
+     */
+    private static final class ResultadoFiltro {
+        private final SearchIndex indice;
+        private final List<Personaje> personajes;
 
-        List<Personaje> pagina = listaFiltrada.subList(inicio, fin);
+        ResultadoFiltro(SearchIndex indice, List<Personaje> personajes) {
+            this.indice = indice;
+            this.personajes = personajes;
+        }
+    }
 
-        for (Personaje p : pagina) {
-            contenedorTarjetas.getChildren().add(crearTarjeta(p));
+    /**
+     * Precarga las miniaturas de una pantalla por delante y otra por detrás de
+     * las filas visibles, empezando por las siguientes. En modo remoto también
+     * pide la siguiente página de resultados.
+     */
+    private void precargarImagenes() {
+        int[] rango = gridTarjetas.getVisibleRange();
+        if (rango == null) {
+            precargador.cancel();
+            return;
         }
+        List<Personaje> items = gridTarjetas.getItems();
+        int visibles = rango[1] - rango[0] + 1;
 
-        txtPagina.setText(String.valueOf(paginaActual + 1));
-        lblTotalPaginas.setText(App.getBundle().getString("main.pagination.of") + " " + totalPaginas);
-        btnPaginaAnterior.setDisable(paginaActual == 0);
-        btnPaginaSiguiente.setDisable(paginaActual >= totalPaginas - 1);
+        // Modo remoto: pedir la siguiente página cuando quedan menos de dos
+        // pantallas por delante
+        if (modoRemoto && cursorRemoto != null && !cargandoPagina && rango[1] + visibles * 2 >= items.size()) {
+            cargarPaginaRemota(consultaRemota, cursorRemoto, generacionFiltro, false);
+        }
 
-        statusBar.setText(App.getBundle().getString("main.status.ready"));
+        List<Personaje> precarga = new ArrayList<>(visibles * 2);
+        for (int i = rango[1] + 1; i < Math.min(items.size(), rango[1] + 1 + visibles); i++) {
+            precarga.add(items.get(i));
+        }
+        for (int i = rango[0] - 1; i >= Math.max(0, rango[0] - visibles); i--) {
+            precarga.add(items.get(i));
+        }
+        precargador.prefetch(precarga);
     }
 
     /**
-     * Crea un componente visual (tarjeta) para un personaje.
-     *
-     * @param p El personaje a mostrar.
-     * @return Un objeto VBox que contiene la representación visual del personaje.
+     * Muestra `listaFiltrada` en la rejilla de tarjetas.
      */
-    private VBox crearTarjeta(Personaje p) {
-        VBox tarjeta = new VBox();
-        tarjeta.setPrefWidth(200);
-        tarjeta.getStyleClass().add("card");
-
-        ImageView img = new ImageView();
-        img.setFitWidth(160);
-        img.setPreserveRatio(true);
+    private void mostrarResultados() {
+        gridTarjetas.setItems(listaFiltrada);
 
-        try {
-            if (p.getImagenUrl() != null && !p.getImagenUrl().isEmpty()) {
-                // Load resized image (320px width) to save memory and avoid D3D crashes
-                Image image = new Image(p.getImagenUrl(), 320, 0, true, true, true);
-                img.setImage(image);
+        if (listaFiltrada.isEmpty()) {
+            // Solo mostrar mensaje si no se está cargando
+            if (!btnSincronizar.isDisabled()) {
+                statusBar.setText(App.getBundle().getString("main.status.no_results"));
             }
-        } catch (Exception e) {
-            logger.error("Error loading image for {}: {}", p.getNombre(), e.getMessage());
+            return;
         }
 
-        Label lblNombre = new Label(p.getNombre());
-        lblNombre.getStyleClass().add("card-title");
-
-        Label lblCasa = new Label(
-                App.getBundle().getString("detail.house") + " " + formatField(p.getCasa()));
-        lblCasa.getStyleClass().add("card-meta");
-
-        Label lblEstado = new Label(
-                App.getBundle().getString("edit.label.status") + " " + formatField(p.getEstado()));
-        lblEstado.getStyleClass().add("card-meta");
-
-        Label lblPatronus = new Label(
-                App.getBundle().getString("detail.patronus") + " " + formatField(p.getPatronus()));
-        lblPatronus.getStyleClass().add("card-meta");
-
-        Button btnDetalles = new Button(App.getBundle().getString("card.button.details"));
-        btnDetalles.getStyleClass().add("card-button");
-        btnDetalles.setOnAction(e -> abrirDetalles(p));
-
-        // Tooltips
-        String cardTooltipText = MessageFormat.format(App.getBundle().getString("card.tooltip.info"), p.getNombre());
-        Tooltip.install(tarjeta, new Tooltip(cardTooltipText));
-
-        String btnTooltipText = MessageFormat.format(App.getBundle().getString("card.tooltip.details"), p.getNombre());
-        btnDetalles.setTooltip(new Tooltip(btnTooltipText));
-
-        // Espaciador para empujar el botón al fondo
-        javafx.scene.layout.Region spacer = new javafx.scene.layout.Region();
-        javafx.scene.layout.VBox.setVgrow(spacer, javafx.scene.layout.Priority.ALWAYS);
-
-        tarjeta.getChildren().addAll(img, lblNombre, lblCasa, lblEstado, lblPatronus, spacer, btnDetalles);
-
-        // --- MICRO-ANIMACIÓN HOVER ---
-        // Escala suave al pasar el ratón (1.0 -> 1.05)
-        javafx.animation.ScaleTransition scaleIn = new javafx.animation.ScaleTransition(
-                javafx.util.Duration.millis(200), tarjeta);
-        scaleIn.setToX(1.05);
-        scaleIn.setToY(1.05);
-
-        javafx.animation.ScaleTransition scaleOut = new javafx.animation.ScaleTransition(
-                javafx.util.Duration.millis(200), tarjeta);
-        scaleOut.setToX(1.0);
-        scaleOut.setToY(1.0);
-
-        tarjeta.setOnMouseEntered(e -> {
-            scaleOut.stop();
-            scaleIn.playFromStart();
-            tarjeta.setStyle("-fx-cursor: hand;"); // Cambiar cursor
-        });
-
-        tarjeta.setOnMouseExited(e -> {
-            scaleIn.stop();
-            scaleOut.playFromStart();
-        });
-        // -----------------------------
-
-        return tarjeta;
-    }
-
-    private String formatField(String value) {
-        return (value == null || value.trim().isEmpty()) ? "-" : value;
+        statusBar.setText(App.getBundle().getString("main.status.ready"));
     }
 
     /**
@@ -803,7 +831,8 @@ public class MainController implements Initializable {
      */
     private void abrirDetalles(Personaje p) {
         try {
-            App.setLastPage(paginaActual); // Guardar página antes de ir a detalles
+            // Guardar la posición antes de ir a detalles
+            App.setLastScrollIndex(gridTarjetas.getFirstVisibleIndex());
             DetailController controller = App.setRootAndGetController("Detail_view", "Detalles del Personaje");
             controller.setPersonaje(p);
         } catch (IOException e) {
@@ -812,6 +841,53 @@ public class MainController implements Initializable {
         }
     }
 
+    /**
+     * Marca o desmarca como favoritos los personajes seleccionados con una sola
+     * petición. El cambio se aplica al momento en los personajes cargados y se
+     * deshace si el backend falla.
+     *
+     * @param ids      Ids de los personajes seleccionados.
+     * @param favorito Nuevo estado.
+     */
+    private void marcarFavoritos(Set<String> ids, boolean favorito) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        // En modo remoto los personajes mostrados no están en masterData
+        List<Personaje> cambiados = new ArrayList<>();
+        Set<Personaje> vistos = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (List<Personaje> lista : List.of(masterData, gridTarjetas.getItems())) {
+            for (Personaje p : lista) {
+                if (ids.contains(p.getApiId()) && p.isFavorite() != favorito && vistos.add(p)) {
+                    p.setFavorite(favorito);
+                    cambiados.add(p);
+                }
+            }
+        }
+
+        HarryPotterAPI.setFavoritesAsync(ids, favorito).whenComplete((ok, ex) -> Platform.runLater(() -> {
+            if (ex == null && Boolean.TRUE.equals(ok)) {
+                // Solo ahora: si falla, lo pendiente en la cola sigue siendo válido
+                MutationOutbox.actualizarFavoritos(ids, favorito);
+                seleccion.limpiar();
+                statusBar.setText(MessageFormat.format(
+                        App.getBundle().getString("main.status.favorites.saved"), ids.size()));
+            } else {
+                if (ex != null) {
+                    logger.error("Error setting favorites: {}", ex.getMessage(), ex);
+                }
+                for (Personaje p : cambiados) {
+                    p.setFavorite(!favorito);
+                }
+                statusBar.setText(App.getBundle().getString("main.status.favorites.error"));
+            }
+            // Con el filtro de favoritos activo, la lista mostrada depende del cambio
+            if (checkFavoritos.isSelected()) {
+                aplicarFiltros(false);
+            }
+        }));
+    }
+
     /**
      * Abre el formulario para añadir un nuevo personaje.
      */
@@ -852,24 +928,45 @@ public class MainController implements Initializable {
      * Importa personajes desde la API y sincroniza imágenes.
      */
     private void sincronizar() {
-        // 1. Carga inicial rápida (datos existentes)
-        setCargando(true);
+        // 1. Carga inicial rápida (datos existentes). Si ya se ve la copia local,
+        // la UI sigue utilizable mientras tanto
+        setCargando(masterData.isEmpty());
         btnSincronizar.setDisable(true);
         statusBar.setText("Cargando datos locales...");
 
-        new Thread(() -> {
+        BackgroundTasks.run(BackgroundTasks.Workload.NETWORK, () -> {
             try {
-                // Fetch fast
-                List<Personaje> cachedData = HarryPotterAPI.fetchCharacters();
+                // Con demasiados personajes para tenerlos todos en memoria, el
+                // servidor resuelve las consultas página a página
+                int totalPersonajes = HarryPotterAPI.getCharacterCount();
+                if (totalPersonajes > REMOTE_QUERY_THRESHOLD) {
+                    logger.info("{} characters in backend: using server-side queries", totalPersonajes);
+                    sincronizarRemoto();
+                    return;
+                }
+
+                // Fetch fast (streaming): la primera página se pinta en cuanto llega
+                List<Personaje> cachedData = new ArrayList<>();
+                HarryPotterAPI.fetchCharacters(p -> {
+                    cachedData.add(p);
+                    if (cachedData.size() == TAMANO_VISTA_PREVIA) {
+                        List<Personaje> primeros = new ArrayList<>(cachedData);
+                        Platform.runLater(() -> mostrarVistaPrevia(primeros));
+                    }
+                });
                 if (cachedData.isEmpty()) {
                     // First run ever?
                 } else {
                     Platform.runLater(() -> {
-                        masterData.setAll(cachedData);
-                        actualizarComboCasas();
-                        // Restore page immediately for initial view
-                        paginaActual = App.getLastPage();
-                        aplicarFiltros(false);
+                        modoRemoto = false;
+                        // Si ya se muestra lo mismo (la copia local), no se repinta
+                        if (!masterData.equals(cachedData)) {
+                            masterData.setAll(cachedData);
+                            actualizarComboCasas();
+                            // Restore scroll position immediately for initial view
+                            indiceRestaurar = App.getLastScrollIndex();
+                            aplicarFiltros(false);
+                        }
                         setCargando(false); // Desbloquear UI inmediatamente
                         statusBar.setText("Datos locales cargados. Buscando actualizaciones...");
                     });
@@ -879,59 +976,7 @@ public class MainController implements Initializable {
                 boolean pullSuccess = HarryPotterAPI.fullSync();
 
                 if (pullSuccess) {
-                    boolean downloading = true;
-                    int noStatusCount = 0;
-
-                    while (downloading) {
-                        try {
-                            JsonObject status = HarryPotterAPI.getImageSyncStatus();
-
-                            if (status != null) {
-                                boolean running = status.get("running").getAsBoolean();
-                                int current = status.get("current").getAsInt();
-                                int total = status.get("total").getAsInt();
-                                Platform.runLater(() -> {
-                                    statusBar.setText(
-                                            String.format("Descargando nuevas imágenes: %d/%d...", current, total));
-                                });
-
-                                if (!running)
-                                    downloading = false;
-                            } else {
-                                noStatusCount++;
-                                if (noStatusCount > 5)
-                                    downloading = false;
-                            }
-
-                            if (downloading)
-                                Thread.sleep(1000); // Polling más lento
-                        } catch (Exception e) {
-                            downloading = false;
-                        }
-                    }
-
-                    // 3. Recarga final tras sincronización
-                    List<Personaje> freshData = HarryPotterAPI.fetchCharacters();
-
-                    // Comprobar si hay cambios reales para evitar parpadeo
-                    Platform.runLater(() -> {
-                        boolean hasChanges = !cachedData.equals(freshData);
-
-                        // Si hay cambios, actualizar datos
-                        if (hasChanges) {
-                            masterData.setAll(freshData);
-                            actualizarComboCasas();
-
-                            // Restaurar última página global (o mantenerla si ya es correcta)
-                            paginaActual = App.getLastPage();
-
-                            // Aplicar filtros SIN reiniciar la página (false)
-                            aplicarFiltros(false);
-                        }
-
-                        statusBar.setText(App.getBundle().getString("main.status.ready"));
-                        btnSincronizar.setDisable(false);
-                    });
+                    esperarDescargaImagenes(() -> recargarTrasSincronizar(cachedData));
                 } else {
                     Platform.runLater(() -> {
                         statusBar.setText("Modo Offline (Sincronización fallida)");
@@ -939,14 +984,265 @@ public class MainController implements Initializable {
                     });
                 }
             } catch (Exception e) {
-                logger.error("Error during synchronization: {}", e.getMessage(), e);
+                errorSincronizacion(e);
+            }
+        });
+    }
+
+    /**
+     * Última fase de la sincronización (en segundo plano), cuando el backend ya
+     * ha descargado las imágenes: recarga lo que haya cambiado.
+     *
+     * @param cachedData Lista que se mostraba antes de sincronizar.
+     */
+    private void recargarTrasSincronizar(List<Personaje> cachedData) {
+        try {
+            // 3. Recarga final tras sincronización: solo los cambios desde la
+            // revisión cargada, aplicados sobre la lista actual
+            long revision = HarryPotterAPI.getLastRevision();
+            CharacterChanges cambios = revision >= 0 ? HarryPotterAPI.fetchChanges(revision) : null;
+            if (cambios != null && !cambios.isReset()) {
+                logger.info("Applying {} upserts and {} deletions since revision {}",
+                        cambios.getUpserts().size(), cambios.getDeleted().size(), revision);
                 Platform.runLater(() -> {
-                    statusBar.setText("Error al sincronizar.");
+                    if (!cambios.isEmpty()) {
+                        aplicarCambios(cambios);
+                    }
+                    statusBar.setText(App.getBundle().getString("main.status.ready"));
                     btnSincronizar.setDisable(false);
-                    setCargando(false);
                 });
+                return;
             }
-        }).start();
+
+            // Sin revisión utilizable: recarga completa, revalidada con ETag (si
+            // nada cambió el servidor responde 304 y no se descarga ni se
+            // decodifica la lista: null)
+            List<Personaje> freshData = HarryPotterAPI.fetchCharactersIfChanged();
+
+            // Comprobar si hay cambios reales para evitar parpadeo
+            Platform.runLater(() -> {
+                boolean hasChanges = freshData != null && !cachedData.equals(freshData);
+
+                // Si hay cambios, actualizar datos
+                if (hasChanges) {
+                    masterData.setAll(freshData);
+                    actualizarComboCasas();
+
+                    // Restaurar la última posición global
+                    indiceRestaurar = App.getLastScrollIndex();
+
+                    // Aplicar filtros SIN volver al principio (false)
+                    aplicarFiltros(false);
+                }
+
+                statusBar.setText(App.getBundle().getString("main.status.ready"));
+                btnSincronizar.setDisable(false);
+            });
+        } catch (Exception e) {
+            errorSincronizacion(e);
+        }
+    }
+
+    private void errorSincronizacion(Exception e) {
+        logger.error("Error during synchronization: {}", e.getMessage(), e);
+        Platform.runLater(() -> {
+            statusBar.setText("Error al sincronizar.");
+            btnSincronizar.setDisable(false);
+            setCargando(false);
+        });
+    }
+
+    /**
+     * Sincronización en modo remoto (se ejecuta en segundo plano): no se descarga
+     * la lista; se muestra la primera página de la consulta actual y, tras la
+     * sincronización completa, se vuelve a consultar.
+     */
+    private void sincronizarRemoto() {
+        Platform.runLater(() -> {
+            modoRemoto = true;
+            masterData.clear();
+            indiceRestaurar = App.getLastScrollIndex();
+            aplicarFiltros(false);
+            setCargando(false);
+            statusBar.setText("Buscando actualizaciones...");
+        });
+
+        if (!HarryPotterAPI.fullSync()) {
+            Platform.runLater(() -> {
+                statusBar.setText("Modo Offline (Sincronización fallida)");
+                btnSincronizar.setDisable(false);
+            });
+            return;
+        }
+        esperarDescargaImagenes(() -> Platform.runLater(() -> {
+            aplicarFiltros(false);
+            statusBar.setText(App.getBundle().getString("main.status.ready"));
+            btnSincronizar.setDisable(false);
+        }));
+    }
+
+    /**
+     * Espera a que el backend termine de descargar las imágenes nuevas, mostrando
+     * el progreso en la barra de estado, y después continúa la sincronización.
+     * La espera puede durar minutos, así que va en el pool de flujos de eventos
+     * y no ocupa ningún hilo de NETWORK.
+     *
+     * @param despues Continuación, que se ejecuta en el pool NETWORK (no se
+     *                ejecuta si la aplicación se está cerrando).
+     */
+    private void esperarDescargaImagenes(Runnable despues) {
+        BackgroundTasks.submit(BackgroundTasks.Workload.EVENTS, this::seguirDescargaImagenes)
+                .thenAccept(seguir -> {
+                    if (seguir) {
+                        BackgroundTasks.run(BackgroundTasks.Workload.NETWORK, despues);
+                    }
+                });
+    }
+
+    /**
+     * Sigue el progreso de la descarga de imágenes hasta que termina.
+     *
+     * @return false si el hilo se interrumpió (la aplicación se está cerrando).
+     */
+    private boolean seguirDescargaImagenes() {
+        try {
+            // El backend avisa de cada cambio de progreso y del final
+            HarryPotterAPI.watchImageSync(status -> {
+                // Las tarjetas de los personajes con la imagen ya guardada se
+                // actualizan al momento
+                Set<String> completados = new HashSet<>();
+                if (status.has("completed")) {
+                    status.getAsJsonArray("completed").forEach(id -> completados.add(id.getAsString()));
+                }
+                if (!completados.isEmpty()) {
+                    Platform.runLater(() -> refrescarImagenes(completados));
+                }
+                if (!status.get("running").getAsBoolean()) {
+                    return;
+                }
+                int current = status.get("current").getAsInt();
+                int total = status.get("total").getAsInt();
+                Platform.runLater(() -> statusBar.setText(
+                        String.format("Descargando nuevas imágenes: %d/%d...", current, total)));
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            // Sin progreso disponible: se continúa sin esperar
+            logger.warn("Could not follow image sync progress: {}", e.getMessage());
+        }
+        return true;
+    }
+
+    /**
+     * Vuelve a cargar la miniatura de las tarjetas visibles de esos personajes
+     * que aún no la tienen (p. ej. porque falló al pedirla antes de que el
+     * backend la descargara).
+     */
+    private void refrescarImagenes(Set<String> ids) {
+        gridTarjetas.refresh(p -> ids.contains(p.getApiId())
+                && !ImageCache.isCached(p.getApiId(), p.getImagenUrl(), ImageCache.THUMBNAIL_WIDTH));
+    }
+
+    /**
+     * Vuelve a descargar un personaje y sustituye la copia local (o la quita si ya
+     * no existe), p. ej. para deshacer un cambio que el backend ha rechazado.
+     *
+     * @param id Id del personaje.
+     */
+    private void recargarPersonaje(String id) {
+        HarryPotterAPI.fetchCharacterAsync(id).whenComplete((p, ex) -> Platform.runLater(() -> {
+            if (ex != null) {
+                logger.error("Error reloading character {}: {}", id, ex.getMessage());
+                return;
+            }
+            aplicarCambios(new CharacterChanges(HarryPotterAPI.getLastRevision(), false,
+                    p == null ? List.of() : List.of(p),
+                    p == null ? List.of(id) : List.of()));
+        }));
+    }
+
+    /**
+     * Aplica sobre {@code masterData} los cambios recibidos del servidor,
+     * sustituyendo, añadiendo o eliminando solo los personajes afectados en lugar
+     * de reconstruir la lista completa.
+     *
+     * @param cambios Cambios desde la última revisión cargada.
+     */
+    private void aplicarCambios(CharacterChanges cambios) {
+        // La imagen de un personaje cambiado puede ser otra (subida desde otro
+        // cliente, pull de MySQL...): se descartan sus copias en caché
+        Set<String> afectados = new HashSet<>(cambios.getDeleted());
+        cambios.getUpserts().forEach(p -> afectados.add(p.getApiId()));
+        ImageCache.invalidate(afectados);
+
+        Map<String, Integer> indices = new HashMap<>();
+        for (int i = 0; i < masterData.size(); i++) {
+            indices.put(masterData.get(i).getApiId(), i);
+        }
+
+        for (Personaje p : cambios.getUpserts()) {
+            Integer i = indices.get(p.getApiId());
+            if (i != null) {
+                masterData.set(i, p);
+            } else {
+                indices.put(p.getApiId(), masterData.size());
+                masterData.add(p);
+            }
+        }
+        if (!cambios.getDeleted().isEmpty()) {
+            Set<String> borrados = new HashSet<>(cambios.getDeleted());
+            masterData.removeIf(p -> borrados.contains(p.getApiId()));
+        }
+
+        actualizarComboCasas();
+        aplicarFiltros(false);
+    }
+
+    /**
+     * Arranque en frío: pinta la última lista descargada (copia local) sin
+     * esperar al backend. La sincronización la reemplaza después si ha cambiado.
+     */
+    private void mostrarCopiaLocal() {
+        BackgroundTasks.submit(BackgroundTasks.Workload.NETWORK, () -> {
+            List<Personaje> copia = new ArrayList<>();
+            int leidos = HarryPotterAPI.readSnapshot(copia::add);
+            return leidos > 0 ? copia : null;
+        }).thenAccept(copia -> {
+            if (copia == null) {
+                return;
+            }
+            logger.info("Showing {} characters from local snapshot", copia.size());
+            Platform.runLater(() -> {
+                // La sincronización ya pudo pintar datos más recientes
+                if (!masterData.isEmpty()) {
+                    return;
+                }
+                masterData.setAll(copia);
+                actualizarComboCasas();
+                indiceRestaurar = App.getLastScrollIndex();
+                aplicarFiltros(false);
+                setCargando(false);
+                statusBar.setText("Datos locales cargados. Buscando actualizaciones...");
+            });
+        });
+    }
+
+    /**
+     * Pinta los primeros personajes recibidos mientras el resto de la lista sigue
+     * descargándose. Solo actúa si todavía no hay datos cargados, para no
+     * sustituir una lista completa por una parcial al re-sincronizar.
+     *
+     * @param primeros Personajes recibidos hasta el momento.
+     */
+    private void mostrarVistaPrevia(List<Personaje> primeros) {
+        if (!masterData.isEmpty())
+            return;
+        masterData.setAll(primeros);
+        aplicarFiltros(false);
+        setCargando(false);
+        statusBar.setText(App.getBundle().getString("main.status.loading"));
     }
 
     /**
@@ -1001,9 +1297,9 @@ public class MainController implements Initializable {
             loadingBox.setVisible(cargando);
             loadingBox.setManaged(cargando);
         }
-        if (contenedorTarjetas != null) {
+        if (gridTarjetas != null) {
             // Opcional: ocultar el contenido mientras carga para que sea más limpio
-            // contenedorTarjetas.setVisible(!cargando);
+            // gridTarjetas.setVisible(!cargando);
         }
 
         // Deshabilitar controles mientras carga
@@ -1024,6 +1320,20 @@ public class MainController implements Initializable {
      * ComboBox.
      */
     private void actualizarComboCasas() {
+        List<String> valores = new ArrayList<>(masterData.size());
+        for (Personaje p : masterData) {
+            valores.add(p.getCasa());
+        }
+        actualizarComboCasas(valores);
+    }
+
+    /**
+     * Rellena el ComboBox de casas a partir de los valores de casa tal cual están
+     * en los datos (p. ej. "Gryffindor or Slytherin"), separándolos y limpiándolos.
+     *
+     * @param valores Valores de casa, con repetidos o vacíos.
+     */
+    private void actualizarComboCasas(List<String> valores) {
         if (comboCasa == null)
             return;
 
@@ -1032,8 +1342,7 @@ public class MainController implements Initializable {
         // Usar un Set para evitar duplicados y ordenar alfabéticamente
         Set<String> casas = new TreeSet<>();
 
-        for (Personaje p : masterData) {
-            String rawCasa = p.getCasa();
+        for (String rawCasa : valores) {
             if (rawCasa == null || rawCasa.trim().isEmpty()) {
                 continue;
             }
@@ -0,0 +1,195 @@
+package org.GaizkaFrost.controllers;
+
+import javafx.scene.Node;
+import javafx.scene.control.ContextMenu;
+import javafx.scene.control.MenuItem;
+import javafx.scene.control.SeparatorMenuItem;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import org.GaizkaFrost.App;
+import org.GaizkaFrost.models.Personaje;
+
+import java.text.MessageFormat;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Selección múltiple de tarjetas de la vista principal.
+ * Ctrl+clic añade o quita una tarjeta, Mayús+clic selecciona el rango desde la
+ * última pulsada y un clic sin modificadores deselecciona todo. El clic derecho
+ * abre un menú (compartido por todas las tarjetas) con las acciones sobre la
+ * selección.
+ *
+ * <p>
+ * La selección se guarda por id, así que sobrevive a que la rejilla reutilice
+ * las tarjetas o se vuelva a filtrar la lista. Al cambiar solo se refrescan las
+ * tarjetas visibles afectadas.
+ * </p>
+ *
+ * @author Gaizka
+ * @author Xiker
+ * @author Diego
+ */
+class SeleccionTarjetas {
+
+    static final String ESTILO_SELECCIONADA = "card-selected";
+
+    private final CardGrid<Personaje> grid;
+    private final Set<String> ids = new LinkedHashSet<>();
+    private final ContextMenu menu = new ContextMenu();
+    private final MenuItem itemAnadirFavoritos = new MenuItem();
+    private final MenuItem itemQuitarFavoritos = new MenuItem();
+
+    private String ultimoId; // Ancla de los rangos con Mayús
+    private IntConsumer onCambio = n -> {
+    };
+
+    /**
+     * @param grid        Rejilla cuyas tarjetas se seleccionan.
+     * @param onFavoritos Acción del menú: ids seleccionados y nuevo estado de
+     *                    favorito.
+     */
+    SeleccionTarjetas(CardGrid<Personaje> grid, BiConsumer<Set<String>, Boolean> onFavoritos) {
+        this.grid = grid;
+
+        itemAnadirFavoritos.setOnAction(e -> onFavoritos.accept(getIds(), true));
+        itemQuitarFavoritos.setOnAction(e -> onFavoritos.accept(getIds(), false));
+        MenuItem itemLimpiar = new MenuItem(App.getBundle().getString("card.menu.selection.clear"));
+        itemLimpiar.setOnAction(e -> limpiar());
+        menu.getItems().addAll(itemAnadirFavoritos, itemQuitarFavoritos, new SeparatorMenuItem(), itemLimpiar);
+    }
+
+    /** Acción a ejecutar cuando cambia la selección; recibe el número de seleccionados. */
+    void setOnCambio(IntConsumer onCambio) {
+        this.onCambio = onCambio;
+    }
+
+    /** Indica si el personaje está seleccionado. */
+    boolean contiene(Personaje p) {
+        return p != null && ids.contains(p.getApiId());
+    }
+
+    /** Copia de los ids seleccionados, en el orden en que se seleccionaron. */
+    Set<String> getIds() {
+        return new LinkedHashSet<>(ids);
+    }
+
+    boolean isEmpty() {
+        return ids.isEmpty();
+    }
+
+    /**
+     * Procesa un clic sobre una tarjeta.
+     *
+     * @param tarjeta Nodo de la tarjeta (ancla del menú contextual).
+     * @param p       Personaje que muestra.
+     * @param event   Evento del ratón.
+     */
+    void clic(Node tarjeta, Personaje p, MouseEvent event) {
+        if (p == null) {
+            return;
+        }
+        String id = p.getApiId();
+        Set<String> afectados = new HashSet<>();
+
+        if (event.getButton() == MouseButton.SECONDARY) {
+            // Clic derecho fuera de la selección: pasa a ser la única seleccionada
+            if (!ids.contains(id)) {
+                afectados.addAll(ids);
+                ids.clear();
+                ids.add(id);
+                afectados.add(id);
+                ultimoId = id;
+            }
+            cambiar(afectados);
+            mostrarMenu(tarjeta, event);
+            return;
+        }
+        if (event.getButton() != MouseButton.PRIMARY) {
+            return;
+        }
+
+        if (event.isShiftDown() && ultimoId != null) {
+            afectados.addAll(seleccionarRango(ultimoId, id));
+        } else if (event.isShortcutDown()) {
+            if (!ids.remove(id)) {
+                ids.add(id);
+            }
+            afectados.add(id);
+            ultimoId = id;
+        } else {
+            // Clic normal: deselecciona todo
+            if (ids.isEmpty()) {
+                return;
+            }
+            afectados.addAll(ids);
+            ids.clear();
+            ultimoId = null;
+        }
+        cambiar(afectados);
+    }
+
+    /** Deselecciona todo. */
+    void limpiar() {
+        if (ids.isEmpty()) {
+            return;
+        }
+        Set<String> afectados = new HashSet<>(ids);
+        ids.clear();
+        ultimoId = null;
+        cambiar(afectados);
+    }
+
+    // ==========================================
+    // MÉTODOS AUXILIARES PRIVADOS (HELPERS)
+    // ==========================================
+
+    /** Añade a la selección los personajes mostrados entre dos ids (ambos incluidos). */
+    private Set<String> seleccionarRango(String desdeId, String hastaId) {
+        List<Personaje> items = grid.getItems();
+        int desde = -1;
+        int hasta = -1;
+        for (int i = 0; i < items.size() && (desde < 0 || hasta < 0); i++) {
+            String id = items.get(i).getApiId();
+            if (id.equals(desdeId)) {
+                desde = i;
+            }
+            if (id.equals(hastaId)) {
+                hasta = i;
+            }
+        }
+        if (desde < 0 || hasta < 0) {
+            // El ancla ya no está en la lista filtrada
+            ids.add(hastaId);
+            ultimoId = hastaId;
+            return Collections.singleton(hastaId);
+        }
+        Set<String> afectados = new HashSet<>();
+        for (int i = Math.min(desde, hasta); i <= Math.max(desde, hasta); i++) {
+            String id = items.get(i).getApiId();
+            if (ids.add(id)) {
+                afectados.add(id);
+            }
+        }
+        return afectados;
+    }
+
+    private void cambiar(Set<String> afectados) {
+        if (!afectados.isEmpty()) {
+            grid.refresh(p -> afectados.contains(p.getApiId()));
+        }
+        onCambio.accept(ids.size());
+    }
+
+    private void mostrarMenu(Node tarjeta, MouseEvent event) {
+        String n = String.valueOf(ids.size());
+        itemAnadirFavoritos.setText(MessageFormat.format(App.getBundle().getString("card.menu.favorite.add"), n));
+        itemQuitarFavoritos.setText(MessageFormat.format(App.getBundle().getString("card.menu.favorite.remove"), n));
+        menu.show(tarjeta, event.getScreenX(), event.getScreenY());
+    }
+}
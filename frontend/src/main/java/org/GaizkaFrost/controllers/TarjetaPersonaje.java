@@ -0,0 +1,139 @@
+package org.GaizkaFrost.controllers;
+
+import javafx.scene.Node;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.image.ImageView;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.Region;
+import javafx.scene.layout.VBox;
+import org.GaizkaFrost.App;
+import org.GaizkaFrost.models.Personaje;
+import org.GaizkaFrost.services.ImageCache;
+
+import java.util.function.Consumer;
+
+/**
+ * Tarjeta de personaje de la vista principal.
+ * Los nodos se crean una sola vez; {@link CardGrid} reutiliza la tarjeta para
+ * distintos personajes llamando a {@link #update(Personaje)}. La animación de
+ * hover y los tooltips no son propios de la tarjeta: los presta
+ * {@link EfectosTarjeta} mientras el ratón está encima. Los clics fuera del
+ * botón van a la selección múltiple ({@link SeleccionTarjetas}).
+ *
+ * @author Gaizka
+ * @author Xiker
+ * @author Diego
+ */
+class TarjetaPersonaje implements CardGrid.Card<Personaje> {
+
+    static final double ANCHO = 200;
+
+    private final VBox tarjeta = new VBox();
+    private final ImageView img = new ImageView();
+    private final Label lblNombre = new Label();
+    private final Label lblCasa = new Label();
+    private final Label lblEstado = new Label();
+    private final Label lblPatronus = new Label();
+    private final Button btnDetalles = new Button();
+
+    private final EfectosTarjeta efectos;
+    private final SeleccionTarjetas seleccion;
+    private Personaje personaje;
+
+    /**
+     * @param onDetalles Acción al pulsar "Detalles" sobre el personaje mostrado.
+     * @param efectos    Efectos de hover compartidos por las tarjetas de la vista.
+     * @param seleccion  Selección múltiple de la vista.
+     */
+    TarjetaPersonaje(Consumer<Personaje> onDetalles, EfectosTarjeta efectos, SeleccionTarjetas seleccion) {
+        this.efectos = efectos;
+        this.seleccion = seleccion;
+        tarjeta.setPrefWidth(ANCHO);
+        tarjeta.setMinWidth(ANCHO);
+        tarjeta.setMaxWidth(ANCHO);
+        tarjeta.getStyleClass().add("card");
+        tarjeta.setStyle("-fx-cursor: hand;"); // Cambiar cursor
+
+        img.setFitWidth(160);
+        img.setPreserveRatio(true);
+
+        lblNombre.getStyleClass().add("card-title");
+        lblCasa.getStyleClass().add("card-meta");
+        lblEstado.getStyleClass().add("card-meta");
+        lblPatronus.getStyleClass().add("card-meta");
+
+        btnDetalles.setText(App.getBundle().getString("card.button.details"));
+        btnDetalles.getStyleClass().add("card-button");
+        btnDetalles.setOnAction(e -> {
+            if (personaje != null) {
+                onDetalles.accept(personaje);
+            }
+        });
+
+        // Espaciador para empujar el botón al fondo
+        Region spacer = new Region();
+        VBox.setVgrow(spacer, Priority.ALWAYS);
+
+        tarjeta.getChildren().addAll(img, lblNombre, lblCasa, lblEstado, lblPatronus, spacer, btnDetalles);
+
+        // --- MICRO-ANIMACIÓN HOVER Y TOOLTIPS ---
+        tarjeta.setOnMouseEntered(e -> efectos.entrar(tarjeta, btnDetalles, personaje));
+        tarjeta.setOnMouseExited(e -> efectos.salir(tarjeta));
+
+        // --- SELECCIÓN MÚLTIPLE ---
+        tarjeta.setOnMouseClicked(e -> {
+            if (!enBoton(e.getPickResult().getIntersectedNode())) {
+                seleccion.clic(tarjeta, personaje, e);
+            }
+        });
+    }
+
+    @Override
+    public Node getNode() {
+        return tarjeta;
+    }
+
+    @Override
+    public void update(Personaje p) {
+        if (p != personaje) {
+            // Al reutilizar la tarjeta no debe quedar escalada ni con los tooltips
+            // de un hover anterior
+            efectos.reiniciar(tarjeta);
+        }
+        personaje = p;
+        tarjeta.getStyleClass().remove(SeleccionTarjetas.ESTILO_SELECCIONADA);
+
+        if (p == null) {
+            ImageCache.unbind(img);
+            img.setImage(null);
+            return;
+        }
+
+        // Miniatura (320px) desde la caché compartida; si la vista se reutiliza
+        // antes de que llegue la imagen, la carga anterior se descarta
+        ImageCache.bind(img, p.getApiId(), p.getImagenUrl(), ImageCache.THUMBNAIL_WIDTH);
+
+        lblNombre.setText(p.getNombre());
+        lblCasa.setText(App.getBundle().getString("detail.house") + " " + formatField(p.getCasa()));
+        lblEstado.setText(App.getBundle().getString("edit.label.status") + " " + formatField(p.getEstado()));
+        lblPatronus.setText(App.getBundle().getString("detail.patronus") + " " + formatField(p.getPatronus()));
+        if (seleccion.contiene(p)) {
+            tarjeta.getStyleClass().add(SeleccionTarjetas.ESTILO_SELECCIONADA);
+        }
+    }
+
+    /** Indica si el nodo pulsado es el botón de detalles o está dentro de él. */
+    private boolean enBoton(Node nodo) {
+        for (Node n = nodo; n != null && n != tarjeta; n = n.getParent()) {
+            if (n == btnDetalles) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String formatField(String value) {
+        return (value == null || value.trim().isEmpty()) ? "-" : value;
+    }
+}
@@ -0,0 +1,52 @@
+package org.GaizkaFrost.models;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Cambios de la lista de personajes desde una revisión dada, tal como los
+ * devuelve {@code GET /characters/changes?since=N}.
+ * Si {@link #isReset()} es true, los cambios no se pueden aplicar
+ * incrementalmente y hay que recargar la lista completa.
+ *
+ * @author Gaizka
+ * @author Xiker
+ * @author Diego
+ */
+public class CharacterChanges {
+
+    private final long revision;
+    private final boolean reset;
+    private final List<Personaje> upserts;
+    private final List<String> deleted;
+
+    public CharacterChanges(long revision, boolean reset, List<Personaje> upserts, List<String> deleted) {
+        this.revision = revision;
+        this.reset = reset;
+        this.upserts = Collections.unmodifiableList(upserts);
+        this.deleted = Collections.unmodifiableList(deleted);
+    }
+
+    /** Revisión del servidor a la que corresponden estos cambios. */
+    public long getRevision() {
+        return revision;
+    }
+
+    public boolean isReset() {
+        return reset;
+    }
+
+    /** Personajes creados o modificados. */
+    public List<Personaje> getUpserts() {
+        return upserts;
+    }
+
+    /** Ids de los personajes eliminados. */
+    public List<String> getDeleted() {
+        return deleted;
+    }
+
+    public boolean isEmpty() {
+        return !reset && upserts.isEmpty() && deleted.isEmpty();
+    }
+}
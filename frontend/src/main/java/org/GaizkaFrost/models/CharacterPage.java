@@ -0,0 +1,50 @@
+package org.GaizkaFrost.models;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Una página de resultados de {@code GET /characters/query}.
+ * El total y las casas solo vienen en la primera página.
+ *
+ * @author Gaizka
+ * @author Xiker
+ * @author Diego
+ */
+public class CharacterPage {
+
+    private final List<Personaje> items;
+    private final String nextCursor;
+    private final int total;
+    private final List<String> houses;
+
+    public CharacterPage(List<Personaje> items, String nextCursor, int total, List<String> houses) {
+        this.items = Collections.unmodifiableList(items);
+        this.nextCursor = nextCursor;
+        this.total = total;
+        this.houses = houses != null ? Collections.unmodifiableList(houses) : null;
+    }
+
+    public List<Personaje> getItems() {
+        return items;
+    }
+
+    /** Cursor de la página siguiente, o null si esta es la última. */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+
+    /** Total de resultados de la consulta, o -1 si no viene en esta página. */
+    public int getTotal() {
+        return total;
+    }
+
+    /** Casas distintas de la base de datos, o null si no vienen en esta página. */
+    public List<String> getHouses() {
+        return houses;
+    }
+}
@@ -0,0 +1,122 @@
+package org.GaizkaFrost.models;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * Consulta de personajes que se resuelve en el servidor
+ * ({@code GET /characters/query}): filtros, orden y tamaño de página.
+ * Los campos vacíos o nulos no filtran.
+ *
+ * @author Gaizka
+ * @author Xiker
+ * @author Diego
+ */
+public class CharacterQuery {
+
+    /** Orden por nombre (por defecto). Con '-' delante, descendente. */
+    public static final String SORT_NAME = "name";
+    public static final String SORT_HOUSE = "house";
+
+    public static final String STATUS_ALIVE = "alive";
+    public static final String STATUS_DECEASED = "deceased";
+    public static final String STATUS_UNKNOWN = "unknown";
+
+    /** Valores especiales del filtro de casa. */
+    public static final String HOUSE_NONE = "none";
+    public static final String HOUSE_UNKNOWN = "unknown";
+
+    private int size = 100;
+    private String sort = SORT_NAME;
+    private String house;
+    private String status;
+    private String text;
+    private String patronus;
+    private boolean favorites;
+
+    public CharacterQuery size(int size) {
+        this.size = size;
+        return this;
+    }
+
+    public CharacterQuery sort(String sort) {
+        this.sort = sort;
+        return this;
+    }
+
+    public CharacterQuery house(String house) {
+        this.house = house;
+        return this;
+    }
+
+    public CharacterQuery status(String status) {
+        this.status = status;
+        return this;
+    }
+
+    /** Texto contenido en el nombre. */
+    public CharacterQuery text(String text) {
+        this.text = text;
+        return this;
+    }
+
+    public CharacterQuery patronus(String patronus) {
+        this.patronus = patronus;
+        return this;
+    }
+
+    public CharacterQuery favorites(boolean favorites) {
+        this.favorites = favorites;
+        return this;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Parámetros de la consulta para la URL.
+     *
+     * @param cursor Cursor de la página siguiente, o null para la primera página.
+     * @return Query string sin el '?' inicial.
+     */
+    public String toQueryString(String cursor) {
+        StringBuilder sb = new StringBuilder();
+        append(sb, "size", String.valueOf(size));
+        append(sb, "sort", sort);
+        append(sb, "house", house);
+        append(sb, "status", status);
+        append(sb, "q", text);
+        append(sb, "patronus", patronus);
+        if (favorites) {
+            append(sb, "favorites", "true");
+        }
+        append(sb, "cursor", cursor);
+        return sb.toString();
+    }
+
+    private static void append(StringBuilder sb, String name, String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return;
+        }
+        if (sb.length() > 0) {
+            sb.append('&');
+        }
+        sb.append(name).append('=').append(URLEncoder.encode(value.trim(), StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof CharacterQuery))
+            return false;
+        return toQueryString(null).equals(((CharacterQuery) o).toQueryString(null));
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(toQueryString(null));
+    }
+}
@@ -3,13 +3,16 @@ package org.GaizkaFrost.models;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Modelo de datos que representa un personaje de Harry Potter.
  * Se utiliza para mapear la respuesta JSON del backend y vincular datos en la
  * interfaz.
+ * Solo los campos que usan la rejilla y los filtros van en el propio objeto;
+ * los de detalle se guardan aparte y solo si alguno tiene valor, de modo que
+ * un personaje sin detalles ocupa poco más que esos campos.
  *
 
  * @author Xiker
@@ -19,6 +22,7 @@ import java.util.List;
 public class Personaje {
 
     // --- CAMPOS PRINCIPALES ---
+    // Los que muestran la rejilla y los filtros; el resto va en `detalles`
     private int id;
     private String apiId;
     private String nombre;
@@ -26,36 +30,46 @@ public class Personaje {
     private String estado; // "Vivo" / "Muerto" o equivalente
     private String patronus;
     private String imagenUrl; // image_small
-    private String imagenFull; // image_full
-
-    // --- DETALLES ---
-    private String born;
-    private String died;
-    private String gender;
-    private String species;
-    private String animagus;
-    private String nationality;
-    private String alias;
-    private String titles;
-    private String wand;
-    private String slug;
-    private String eyeColor;
-    private String hairColor;
-    private String skinColor;
-    private String height;
-    private String weight;
-    private String boggart;
-    private String romances;
-    private String family;
-    private String jobs;
-
-    // --- JSON original de la API ---
-    private String rawJson;
     private boolean favorite;
 
-    private String bloodStatus;
-    private String role;
-    private String wiki;
+    // --- DETALLES ---
+    // Solo se reservan si el personaje tiene algún detalle no vacío: en listas
+    // grandes la mayoría no tiene casi ninguno
+    private Detalles detalles;
+    // true si se cargó de la lista resumida y aún no tiene los detalles
+    private boolean resumen;
+
+    /**
+     * Campos de detalle (ficha, edición, informes). Un campo no asignado vale "".
+     */
+    private static final class Detalles {
+        private String imagenFull = ""; // image_full
+        private String born = "";
+        private String died = "";
+        private String gender = "";
+        private String species = "";
+        private String animagus = "";
+        private String nationality = "";
+        private String alias = "";
+        private String titles = "";
+        private String wand = "";
+        private String slug = "";
+        private String eyeColor = "";
+        private String hairColor = "";
+        private String skinColor = "";
+        private String height = "";
+        private String weight = "";
+        private String boggart = "";
+        private String romances = "";
+        private String family = "";
+        private String jobs = "";
+        private String bloodStatus = "";
+        private String role = "";
+        private String wiki = "";
+
+        // --- JSON original de la API ---
+        private String rawJson = "";
+    }
 
     // ==========================
     // CONSTRUCTORES
@@ -143,126 +157,180 @@ public class Personaje {
     }
 
     public String getImagenFull() {
-        return imagenFull;
+        return detalles != null ? detalles.imagenFull : "";
     }
 
     public void setImagenFull(String imagenFull) {
-        this.imagenFull = imagenFull;
+        Detalles d = detallesPara(imagenFull);
+        if (d != null)
+            d.imagenFull = imagenFull;
     }
 
     public String getBorn() {
-        return born;
+        return detalles != null ? detalles.born : "";
     }
 
     public void setBorn(String born) {
-        this.born = born;
+        Detalles d = detallesPara(born);
+        if (d != null)
+            d.born = born;
     }
 
     public String getDied() {
-        return died;
+        return detalles != null ? detalles.died : "";
     }
 
     public void setDied(String died) {
-        this.died = died;
+        Detalles d = detallesPara(died);
+        if (d != null)
+            d.died = died;
     }
 
     public String getGender() {
-        return gender;
+        return detalles != null ? detalles.gender : "";
     }
 
     public void setGender(String gender) {
-        this.gender = gender;
+        Detalles d = detallesPara(gender);
+        if (d != null)
+            d.gender = gender;
     }
 
     public String getSpecies() {
-        return species;
+        return detalles != null ? detalles.species : "";
     }
 
     public void setSpecies(String species) {
-        this.species = species;
+        Detalles d = detallesPara(species);
+        if (d != null)
+            d.species = species;
     }
 
     public String getAnimagus() {
-        return animagus;
+        return detalles != null ? detalles.animagus : "";
     }
 
     public void setAnimagus(String animagus) {
-        this.animagus = animagus;
+        Detalles d = detallesPara(animagus);
+        if (d != null)
+            d.animagus = animagus;
     }
 
     public String getNationality() {
-        return nationality;
+        return detalles != null ? detalles.nationality : "";
     }
 
     public void setNationality(String nationality) {
-        this.nationality = nationality;
+        Detalles d = detallesPara(nationality);
+        if (d != null)
+            d.nationality = nationality;
     }
 
     public String getAlias() {
-        return alias;
+        return detalles != null ? detalles.alias : "";
     }
 
     public void setAlias(String alias) {
-        this.alias = alias;
+        Detalles d = detallesPara(alias);
+        if (d != null)
+            d.alias = alias;
     }
 
     public String getTitles() {
-        return titles;
+        return detalles != null ? detalles.titles : "";
     }
 
     public void setTitles(String titles) {
-        this.titles = titles;
+        Detalles d = detallesPara(titles);
+        if (d != null)
+            d.titles = titles;
     }
 
     public String getWand() {
-        return wand;
+        return detalles != null ? detalles.wand : "";
     }
 
     public void setWand(String wand) {
-        this.wand = wand;
+        Detalles d = detallesPara(wand);
+        if (d != null)
+            d.wand = wand;
     }
 
     public String getSlug() {
-        return slug;
+        return detalles != null ? detalles.slug : "";
     }
 
     public void setSlug(String slug) {
-        this.slug = slug;
+        Detalles d = detallesPara(slug);
+        if (d != null)
+            d.slug = slug;
     }
 
     public String getRawJson() {
-        return rawJson;
+        return detalles != null ? detalles.rawJson : "";
     }
 
     public void setRawJson(String rawJson) {
-        this.rawJson = rawJson;
+        Detalles d = detallesPara(rawJson);
+        if (d != null)
+            d.rawJson = rawJson;
     }
 
     // Blood status
     public String getBloodStatus() {
-        return bloodStatus;
+        return detalles != null ? detalles.bloodStatus : "";
     }
 
     public void setBloodStatus(String bloodStatus) {
-        this.bloodStatus = bloodStatus;
+        Detalles d = detallesPara(bloodStatus);
+        if (d != null)
+            d.bloodStatus = bloodStatus;
     }
 
     // Role
     public String getRole() {
-        return role;
+        return detalles != null ? detalles.role : "";
     }
 
     public void setRole(String role) {
-        this.role = role;
+        Detalles d = detallesPara(role);
+        if (d != null)
+            d.role = role;
     }
 
     // Wiki
     public String getWiki() {
-        return wiki;
+        return detalles != null ? detalles.wiki : "";
     }
 
     public void setWiki(String wiki) {
-        this.wiki = wiki;
+        Detalles d = detallesPara(wiki);
+        if (d != null)
+            d.wiki = wiki;
+    }
+
+    /**
+     * Indica si el personaje viene de la lista resumida, sin los campos de
+     * detalle (ver {@link #copiarDetalles(Personaje)}).
+     */
+    public boolean isResumen() {
+        return resumen;
+    }
+
+    public void setResumen(boolean resumen) {
+        this.resumen = resumen;
+    }
+
+    /**
+     * Completa un personaje resumido con los detalles de su ficha completa.
+     * Los detalles se comparten con {@code completo}, que no debe modificarse
+     * después.
+     *
+     * @param completo Ficha completa del mismo personaje.
+     */
+    public void copiarDetalles(Personaje completo) {
+        this.detalles = completo.detalles;
+        this.resumen = false;
     }
 
     // Favorite status
@@ -275,143 +343,275 @@ public class Personaje {
     }
 
     public String getEyeColor() {
-        return eyeColor;
+        return detalles != null ? detalles.eyeColor : "";
     }
 
     public void setEyeColor(String eyeColor) {
-        this.eyeColor = eyeColor;
+        Detalles d = detallesPara(eyeColor);
+        if (d != null)
+            d.eyeColor = eyeColor;
     }
 
     public String getHairColor() {
-        return hairColor;
+        return detalles != null ? detalles.hairColor : "";
     }
 
     public void setHairColor(String hairColor) {
-        this.hairColor = hairColor;
+        Detalles d = detallesPara(hairColor);
+        if (d != null)
+            d.hairColor = hairColor;
     }
 
     public String getSkinColor() {
-        return skinColor;
+        return detalles != null ? detalles.skinColor : "";
     }
 
     public void setSkinColor(String skinColor) {
-        this.skinColor = skinColor;
+        Detalles d = detallesPara(skinColor);
+        if (d != null)
+            d.skinColor = skinColor;
     }
 
     public String getHeight() {
-        return height;
+        return detalles != null ? detalles.height : "";
     }
 
     public void setHeight(String height) {
-        this.height = height;
+        Detalles d = detallesPara(height);
+        if (d != null)
+            d.height = height;
     }
 
     public String getWeight() {
-        return weight;
+        return detalles != null ? detalles.weight : "";
     }
 
     public void setWeight(String weight) {
-        this.weight = weight;
+        Detalles d = detallesPara(weight);
+        if (d != null)
+            d.weight = weight;
     }
 
     public String getBoggart() {
-        return boggart;
+        return detalles != null ? detalles.boggart : "";
     }
 
     public void setBoggart(String boggart) {
-        this.boggart = boggart;
+        Detalles d = detallesPara(boggart);
+        if (d != null)
+            d.boggart = boggart;
     }
 
     public String getRomances() {
-        return romances;
+        return detalles != null ? detalles.romances : "";
     }
 
     public void setRomances(String romances) {
-        this.romances = romances;
+        Detalles d = detallesPara(romances);
+        if (d != null)
+            d.romances = romances;
     }
 
     public String getFamily() {
-        return family;
+        return detalles != null ? detalles.family : "";
     }
 
     public void setFamily(String family) {
-        this.family = family;
+        Detalles d = detallesPara(family);
+        if (d != null)
+            d.family = family;
     }
 
     public String getJobs() {
-        return jobs;
+        return detalles != null ? detalles.jobs : "";
     }
 
     public void setJobs(String jobs) {
-        this.jobs = jobs;
+        Detalles d = detallesPara(jobs);
+        if (d != null)
+            d.jobs = jobs;
+    }
+
+    /**
+     * Detalles en los que asignar un valor: se crean al asignar el primer valor
+     * no vacío; mientras no existan, asignar un valor vacío no hace nada.
+     */
+    private Detalles detallesPara(String valor) {
+        if (detalles == null && valor != null && !valor.isEmpty()) {
+            detalles = new Detalles();
+        }
+        return detalles;
     }
 
     // ==========================
     // FACTORY METHODS & UTILS
     // ==========================
 
+    /** Tope de la tabla de símbolos: los valores categóricos reales son pocos. */
+    private static final int MAX_SIMBOLOS = 4096;
+    private static final Map<String, String> SIMBOLOS = new ConcurrentHashMap<>();
+    private static final ThreadLocal<StringBuilder> BUFFER_LISTAS = ThreadLocal
+            .withInitial(() -> new StringBuilder(256));
+
+    /**
+     * Crea un personaje a partir del JSON del backend.
+     * Recorre una sola vez las entradas del objeto; los campos que faltan quedan
+     * como cadena vacía y los de pocos valores distintos (casa, especie,
+     * género...) se comparten entre personajes mediante {@link #simbolo(String)}.
+     */
     public static Personaje fromJson(JsonObject obj) {
-        String id = getStringOrEmpty(obj, "id");
-        String nombre = getStringOrEmpty(obj, "name");
-        String casa = getStringOrEmpty(obj, "house");
-        String died = getStringOrEmpty(obj, "died");
-        String estado = (died != null && !died.isEmpty()) ? "Deceased" : "Alive";
-        String patronus = getStringOrEmpty(obj, "patronus");
-        String imagen = getStringOrEmpty(obj, "image");
-
-        Personaje p = new Personaje(id, nombre, casa, estado, patronus, imagen);
-
-        if (obj.has("is_favorite") && !obj.get("is_favorite").isJsonNull()) {
-            p.setFavorite(obj.get("is_favorite").getAsBoolean());
-        }
-
-        p.setBorn(getStringOrEmpty(obj, "born"));
-        p.setDied(died);
-        p.setGender(getStringOrEmpty(obj, "gender"));
-        p.setSpecies(getStringOrEmpty(obj, "species"));
-        p.setBloodStatus(getStringOrEmpty(obj, "blood_status"));
-        p.setRole(getStringOrEmpty(obj, "role"));
-        p.setWiki(getStringOrEmpty(obj, "wiki"));
-
-        p.setAlias(getListAsString(obj, "alias_names"));
-        p.setTitles(getListAsString(obj, "titles"));
-        p.setWand(getListAsString(obj, "wand"));
-        p.setRomances(getListAsString(obj, "romances"));
-        p.setFamily(getListAsString(obj, "family_member"));
-        p.setJobs(getListAsString(obj, "jobs"));
-
-        p.setAnimagus(getStringOrEmpty(obj, "animagus"));
-        p.setBoggart(getStringOrEmpty(obj, "boggart"));
-        p.setEyeColor(getStringOrEmpty(obj, "eye_color"));
-        p.setHairColor(getStringOrEmpty(obj, "hair_color"));
-        p.setSkinColor(getStringOrEmpty(obj, "skin_color"));
-        p.setHeight(getStringOrEmpty(obj, "height"));
-        p.setWeight(getStringOrEmpty(obj, "weight"));
-        p.setNationality(getStringOrEmpty(obj, "nationality"));
-
+        Personaje p = new Personaje();
+        p.apiId = p.nombre = p.casa = p.patronus = p.imagenUrl = "";
+        p.actualizarDesdeJson(obj);
         return p;
     }
 
-    private static String getStringOrEmpty(JsonObject obj, String key) {
-        if (obj.has(key) && !obj.get(key).isJsonNull()) {
-            return obj.get(key).getAsString();
+    /**
+     * Sobrescribe los campos presentes en un JSON con el formato del backend
+     * (p. ej. los de una edición pendiente de confirmar); el resto no cambia.
+     *
+     * @param obj Campos a actualizar.
+     */
+    public void actualizarDesdeJson(JsonObject obj) {
+        for (Map.Entry<String, JsonElement> entry : obj.entrySet()) {
+            JsonElement value = entry.getValue();
+            if (value.isJsonNull()) {
+                continue;
+            }
+            switch (entry.getKey()) {
+                case "id":
+                    apiId = value.getAsString();
+                    break;
+                case "name":
+                    nombre = value.getAsString();
+                    break;
+                case "house":
+                    casa = simbolo(value.getAsString());
+                    break;
+                case "died":
+                    setDied(value.getAsString());
+                    break;
+                case "patronus":
+                    patronus = value.getAsString();
+                    break;
+                case "image":
+                    imagenUrl = value.getAsString();
+                    break;
+                case "is_favorite":
+                    favorite = value.getAsBoolean();
+                    break;
+                case "born":
+                    setBorn(value.getAsString());
+                    break;
+                case "gender":
+                    setGender(simbolo(value.getAsString()));
+                    break;
+                case "species":
+                    setSpecies(simbolo(value.getAsString()));
+                    break;
+                case "blood_status":
+                    setBloodStatus(simbolo(value.getAsString()));
+                    break;
+                case "role":
+                    setRole(value.getAsString());
+                    break;
+                case "wiki":
+                    setWiki(value.getAsString());
+                    break;
+                case "alias_names":
+                    setAlias(listAsString(value));
+                    break;
+                case "titles":
+                    setTitles(listAsString(value));
+                    break;
+                case "wand":
+                    setWand(listAsString(value));
+                    break;
+                case "romances":
+                    setRomances(listAsString(value));
+                    break;
+                case "family_member":
+                    setFamily(listAsString(value));
+                    break;
+                case "jobs":
+                    setJobs(listAsString(value));
+                    break;
+                case "animagus":
+                    setAnimagus(value.getAsString());
+                    break;
+                case "boggart":
+                    setBoggart(value.getAsString());
+                    break;
+                case "eye_color":
+                    setEyeColor(simbolo(value.getAsString()));
+                    break;
+                case "hair_color":
+                    setHairColor(simbolo(value.getAsString()));
+                    break;
+                case "skin_color":
+                    setSkinColor(simbolo(value.getAsString()));
+                    break;
+                case "height":
+                    setHeight(value.getAsString());
+                    break;
+                case "weight":
+                    setWeight(value.getAsString());
+                    break;
+                case "nationality":
+                    setNationality(simbolo(value.getAsString()));
+                    break;
+                default:
+                    break;
+            }
         }
-        return "";
+        // Literales: una sola instancia para todos los personajes
+        estado = getDied().isEmpty() ? "Alive" : "Deceased";
+    }
+
+    /**
+     * Devuelve una instancia compartida de un valor categórico, de modo que los
+     * valores repetidos ("Gryffindor", "Human", "Male"...) ocupan memoria una
+     * sola vez. Si la tabla está llena, se devuelve el valor tal cual.
+     *
+     * @param valor Valor leído.
+     * @return La instancia compartida igual a {@code valor}.
+     */
+    public static String simbolo(String valor) {
+        if (valor == null || valor.isEmpty()) {
+            return "";
+        }
+        String compartido = SIMBOLOS.get(valor);
+        if (compartido != null) {
+            return compartido;
+        }
+        if (SIMBOLOS.size() >= MAX_SIMBOLOS) {
+            return valor;
+        }
+        compartido = SIMBOLOS.putIfAbsent(valor, valor);
+        return compartido != null ? compartido : valor;
     }
 
-    private static String getListAsString(JsonObject obj, String key) {
-        if (obj.has(key) && !obj.get(key).isJsonNull()) {
-            JsonElement el = obj.get(key);
-            if (el.isJsonArray()) {
-                JsonArray arr = el.getAsJsonArray();
-                List<String> items = new ArrayList<>();
-                for (JsonElement e : arr) {
-                    items.add(e.getAsString());
+    /** Lista JSON como texto "a, b, c" (o el valor tal cual si no es lista). */
+    private static String listAsString(JsonElement el) {
+        if (el.isJsonArray()) {
+            JsonArray arr = el.getAsJsonArray();
+            if (arr.size() == 0) {
+                return "";
+            }
+            if (arr.size() == 1) {
+                return arr.get(0).getAsString();
+            }
+            StringBuilder sb = BUFFER_LISTAS.get();
+            sb.setLength(0);
+            for (int i = 0; i < arr.size(); i++) {
+                if (i > 0) {
+                    sb.append(", ");
                 }
-                return String.join(", ", items);
-            } else if (el.isJsonPrimitive()) {
-                return el.getAsString();
+                sb.append(arr.get(i).getAsString());
             }
+            return sb.toString();
+        } else if (el.isJsonPrimitive()) {
+            return el.getAsString();
         }
         return "";
     }
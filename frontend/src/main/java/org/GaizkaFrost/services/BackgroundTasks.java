@@ -0,0 +1,306 @@
+package org.GaizkaFrost.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Servicio central de ejecución en segundo plano.
+ * Cada tipo de trabajo ({@link Workload}) tiene su propio pool acotado de hilos
+ * daemon con nombre, de forma que ninguna parte de la aplicación crea hilos
+ * sueltos y todos se pueden cancelar al cerrar.
+ *
+ * <p>
+ * Con {@code -Danuario.virtualThreads=true} y un JDK 21 o superior, los pools
+ * usan hilos virtuales (manteniendo el mismo límite de concurrencia).
+ * </p>
+ *
+ * @author Gaizka
+ * @author Xiker
+ * @author Diego
+ */
+public final class BackgroundTasks {
+
+    private static final Logger logger = LoggerFactory.getLogger(BackgroundTasks.class);
+
+    /**
+     * Tipos de trabajo, cada uno con su pool: hilos máximos y tamaño de cola.
+     */
+    public enum Workload {
+        /** Llamadas a la API y sincronización. */
+        NETWORK("net", 4, 256),
+        /** Descarga y decodificación de imágenes. */
+        IMAGE("img", 2, 512),
+        /** Generación de informes PDF. */
+        REPORT("report", 1, 8),
+        /** Filtrado de la lista de personajes (solo importa el último). */
+        FILTER("filter", 1, 16),
+        /** Flujos de eventos de larga duración (progreso de la descarga de imágenes). */
+        EVENTS("events", 1, 8);
+
+        private final String threadPrefix;
+        private final int threads;
+        private final int queueCapacity;
+
+        Workload(String threadPrefix, int threads, int queueCapacity) {
+            this.threadPrefix = threadPrefix;
+            this.threads = threads;
+            this.queueCapacity = queueCapacity;
+        }
+    }
+
+    private static final boolean VIRTUAL_THREADS = Boolean.getBoolean("anuario.virtualThreads");
+
+    private static final Map<Workload, ThreadPoolExecutor> pools = new EnumMap<>(Workload.class);
+    private static final Map<Workload, AtomicLong> rejected = new EnumMap<>(Workload.class);
+    private static volatile boolean shutdown = false;
+
+    private BackgroundTasks() {
+    }
+
+    // ==========================================
+    // ENVÍO DE TAREAS
+    // ==========================================
+
+    /**
+     * Ejecuta una tarea en el pool indicado.
+     * Cancelar el futuro devuelto interrumpe la tarea si ya está en marcha. Si el
+     * pool está saturado o cerrado, el futuro se completa con
+     * {@link RejectedExecutionException}.
+     *
+     * @param workload Tipo de trabajo.
+     * @param task     Tarea a ejecutar.
+     * @return Futuro con el resultado de la tarea.
+     */
+    public static <T> CompletableFuture<T> submit(Workload workload, Callable<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        FutureTask<T> futureTask = new FutureTask<T>(task) {
+            @Override
+            protected void done() {
+                if (isCancelled()) {
+                    result.cancel(false);
+                    return;
+                }
+                try {
+                    result.complete(get());
+                } catch (ExecutionException e) {
+                    result.completeExceptionally(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    result.completeExceptionally(e);
+                }
+            }
+        };
+        result.whenComplete((value, ex) -> {
+            if (result.isCancelled()) {
+                futureTask.cancel(true);
+            }
+        });
+
+        try {
+            pool(workload).execute(futureTask);
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Ejecuta una tarea sin resultado en el pool indicado.
+     *
+     * @param workload Tipo de trabajo.
+     * @param task     Tarea a ejecutar.
+     * @return Futuro que se completa al terminar la tarea.
+     */
+    public static CompletableFuture<Void> run(Workload workload, Runnable task) {
+        return submit(workload, () -> {
+            task.run();
+            return null;
+        });
+    }
+
+    // ==========================================
+    // MÉTRICAS Y CIERRE
+    // ==========================================
+
+    /**
+     * Devuelve una instantánea del estado de un pool.
+     */
+    public static Metrics getMetrics(Workload workload) {
+        ThreadPoolExecutor pool;
+        synchronized (pools) {
+            pool = pools.get(workload);
+        }
+        if (pool == null) {
+            return new Metrics(workload, 0, 0, 0, 0);
+        }
+        return new Metrics(workload, pool.getActiveCount(), pool.getQueue().size(), pool.getCompletedTaskCount(),
+                rejected.get(workload).get());
+    }
+
+    /**
+     * Cancela las tareas pendientes, interrumpe las que están en marcha y espera
+     * como máximo {@code grace} a que terminen. Se llama al detener la aplicación.
+     *
+     * @param grace Tiempo máximo de espera.
+     * @return true si todos los pools terminaron a tiempo.
+     */
+    public static boolean shutdown(Duration grace) {
+        List<ThreadPoolExecutor> active;
+        synchronized (pools) {
+            shutdown = true;
+            active = List.copyOf(pools.values());
+        }
+
+        for (Workload workload : Workload.values()) {
+            logger.info("Background pool {}", getMetrics(workload));
+        }
+        for (ThreadPoolExecutor pool : active) {
+            for (Runnable pending : pool.shutdownNow()) {
+                if (pending instanceof Future) {
+                    ((Future<?>) pending).cancel(false);
+                }
+            }
+        }
+
+        long deadline = System.nanoTime() + grace.toNanos();
+        boolean terminated = true;
+        for (ThreadPoolExecutor pool : active) {
+            try {
+                long remaining = deadline - System.nanoTime();
+                terminated &= pool.awaitTermination(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        if (!terminated) {
+            logger.warn("Some background tasks did not finish within {} ms", grace.toMillis());
+        }
+        return terminated;
+    }
+
+    // ==========================================
+    // MÉTODOS AUXILIARES PRIVADOS (HELPERS)
+    // ==========================================
+
+    private static ThreadPoolExecutor pool(Workload workload) {
+        synchronized (pools) {
+            if (shutdown) {
+                throw new RejectedExecutionException("Background tasks already shut down");
+            }
+            return pools.computeIfAbsent(workload, BackgroundTasks::createPool);
+        }
+    }
+
+    private static ThreadPoolExecutor createPool(Workload workload) {
+        AtomicLong rejectedCount = new AtomicLong();
+        rejected.put(workload, rejectedCount);
+
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(workload.threads, workload.threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(workload.queueCapacity), threadFactory(workload),
+                (task, executor) -> {
+                    rejectedCount.incrementAndGet();
+                    logger.warn("{} pool saturated ({} queued), task rejected", workload,
+                            executor.getQueue().size());
+                    throw new RejectedExecutionException(workload + " pool saturated");
+                });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    private static ThreadFactory threadFactory(Workload workload) {
+        String prefix = "bg-" + workload.threadPrefix + "-";
+        if (VIRTUAL_THREADS) {
+            ThreadFactory virtual = virtualThreadFactory(prefix);
+            if (virtual != null) {
+                return virtual;
+            }
+        }
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /**
+     * Crea una fábrica de hilos virtuales (JDK 21+) mediante reflexión, ya que el
+     * proyecto compila para Java 11. Devuelve null si no están disponibles.
+     */
+    private static ThreadFactory virtualThreadFactory(String prefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix, 1L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.warn("Virtual threads not available on this JVM, using platform threads");
+            return null;
+        }
+    }
+
+    /**
+     * Estado de un pool en un momento dado.
+     */
+    public static final class Metrics {
+
+        private final Workload workload;
+        private final int activeTasks;
+        private final int queuedTasks;
+        private final long completedTasks;
+        private final long rejectedTasks;
+
+        public Metrics(Workload workload, int activeTasks, int queuedTasks, long completedTasks,
+                long rejectedTasks) {
+            this.workload = workload;
+            this.activeTasks = activeTasks;
+            this.queuedTasks = queuedTasks;
+            this.completedTasks = completedTasks;
+            this.rejectedTasks = rejectedTasks;
+        }
+
+        public Workload getWorkload() {
+            return workload;
+        }
+
+        public int getActiveTasks() {
+            return activeTasks;
+        }
+
+        public int getQueuedTasks() {
+            return queuedTasks;
+        }
+
+        public long getCompletedTasks() {
+            return completedTasks;
+        }
+
+        public long getRejectedTasks() {
+            return rejectedTasks;
+        }
+
+        @Override
+        public String toString() {
+            return workload + ": active=" + activeTasks + ", queued=" + queuedTasks + ", completed="
+                    + completedTasks + ", rejected=" + rejectedTasks;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package org.GaizkaFrost.services;
+
+import org.GaizkaFrost.models.Personaje;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Decodificador del formato binario compacto de la lista de personajes
+ * ({@value #MIMETYPE}), alternativa a JSON que el backend envía si se pide en
+ * la cabecera Accept.
+ *
+ * <p>
+ * Los nombres de campo vienen una sola vez en la cabecera y los valores, como
+ * índices a un diccionario de cadenas que se decodifica una sola vez: los
+ * valores repetidos (casa, especie, género...) son la misma instancia de
+ * String para todos los personajes. La URL de imagen se construye a partir de
+ * una plantilla con el id. El formato está descrito en
+ * {@code backend/services/CharacterCodec.py}.
+ * </p>
+ *
+ * @author Gaizka
+ * @author Xiker
+ * @author Diego
+ */
+final class CharacterCodec {
+
+    static final String MIMETYPE = "application/x-anuario-characters";
+
+    private static final byte[] MAGIC = { 'A', 'N', 'C', 'H' };
+    private static final int VERSION = 1;
+
+    private static final int TYPE_STRING = 0;
+    private static final int TYPE_LIST = 1;
+    private static final int TYPE_BOOL = 2;
+
+    private static final int MAX_STRING_BYTES = 1024 * 1024;
+
+    // Campo del formato -> setter de Personaje (como en fromJson, los campos
+    // categóricos pasan por la tabla de símbolos compartida)
+    private static final Map<String, BiConsumer<Personaje, String>> SETTERS = new HashMap<>();
+
+    static {
+        SETTERS.put("id", Personaje::setApiId);
+        SETTERS.put("name", Personaje::setNombre);
+        SETTERS.put("house", (p, v) -> p.setCasa(Personaje.simbolo(v)));
+        SETTERS.put("died", Personaje::setDied);
+        SETTERS.put("patronus", Personaje::setPatronus);
+        SETTERS.put("born", Personaje::setBorn);
+        SETTERS.put("gender", (p, v) -> p.setGender(Personaje.simbolo(v)));
+        SETTERS.put("species", (p, v) -> p.setSpecies(Personaje.simbolo(v)));
+        SETTERS.put("blood_status", (p, v) -> p.setBloodStatus(Personaje.simbolo(v)));
+        SETTERS.put("role", Personaje::setRole);
+        SETTERS.put("wiki", Personaje::setWiki);
+        SETTERS.put("alias_names", Personaje::setAlias);
+        SETTERS.put("titles", Personaje::setTitles);
+        SETTERS.put("wand", Personaje::setWand);
+        SETTERS.put("romances", Personaje::setRomances);
+        SETTERS.put("family_member", Personaje::setFamily);
+        SETTERS.put("jobs", Personaje::setJobs);
+        SETTERS.put("animagus", Personaje::setAnimagus);
+        SETTERS.put("boggart", Personaje::setBoggart);
+        SETTERS.put("eye_color", (p, v) -> p.setEyeColor(Personaje.simbolo(v)));
+        SETTERS.put("hair_color", (p, v) -> p.setHairColor(Personaje.simbolo(v)));
+        SETTERS.put("skin_color", (p, v) -> p.setSkinColor(Personaje.simbolo(v)));
+        SETTERS.put("height", Personaje::setHeight);
+        SETTERS.put("weight", Personaje::setWeight);
+        SETTERS.put("nationality", (p, v) -> p.setNationality(Personaje.simbolo(v)));
+    }
+
+    private CharacterCodec() {
+    }
+
+    /**
+     * Decodifica una lista de personajes y los entrega uno a uno según se leen.
+     *
+     * @param body       Flujo con la lista codificada.
+     * @param consumidor Recibe cada personaje (en el hilo que llama).
+     * @return Número de personajes entregados.
+     * @throws IOException Si el flujo no tiene el formato esperado.
+     */
+    static int read(InputStream body, Consumer<Personaje> consumidor) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(body));
+
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not an encoded character list");
+        }
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported character list version: " + version);
+        }
+
+        int fieldCount = readVarint(in);
+        int[] types = new int[fieldCount];
+        String[] names = new String[fieldCount];
+        List<BiConsumer<Personaje, String>> setters = new ArrayList<>(fieldCount);
+        for (int f = 0; f < fieldCount; f++) {
+            types[f] = in.readUnsignedByte();
+            names[f] = readString(in);
+            if (types[f] > TYPE_BOOL) {
+                throw new IOException("Unknown field type " + types[f] + " for " + names[f]);
+            }
+            // Los campos desconocidos se leen igualmente, pero se ignoran
+            setters.add(SETTERS.getOrDefault(names[f], (p, valor) -> {
+            }));
+        }
+        String imageTemplate = readString(in);
+
+        int dictionarySize = readVarint(in);
+        String[] dictionary = new String[dictionarySize];
+        for (int i = 0; i < dictionarySize; i++) {
+            dictionary[i] = readString(in);
+        }
+
+        int count = readVarint(in);
+        StringBuilder lista = new StringBuilder();
+        for (int n = 0; n < count; n++) {
+            Personaje p = new Personaje();
+            for (int f = 0; f < fieldCount; f++) {
+                switch (types[f]) {
+                    case TYPE_BOOL:
+                        boolean value = in.readUnsignedByte() != 0;
+                        if ("is_favorite".equals(names[f])) {
+                            p.setFavorite(value);
+                        }
+                        break;
+                    case TYPE_LIST:
+                        // Igual que en JSON: los elementos unidos por ", "
+                        lista.setLength(0);
+                        int items = readVarint(in);
+                        for (int i = 0; i < items; i++) {
+                            if (i > 0) {
+                                lista.append(", ");
+                            }
+                            lista.append(lookup(dictionary, readVarint(in)));
+                        }
+                        setters.get(f).accept(p, items == 0 ? "" : lista.toString());
+                        break;
+                    default:
+                        setters.get(f).accept(p, lookup(dictionary, readVarint(in)));
+                        break;
+                }
+            }
+            String died = p.getDied();
+            p.setEstado(died != null && !died.isEmpty() ? "Deceased" : "Alive");
+            String id = p.getApiId();
+            p.setImagenUrl(imageTemplate.isEmpty() || id == null || id.isEmpty() ? ""
+                    : imageTemplate.replace("{id}", id));
+            consumidor.accept(p);
+        }
+        return count;
+    }
+
+    // ==========================================
+    // MÉTODOS AUXILIARES PRIVADOS (HELPERS)
+    // ==========================================
+
+    private static String lookup(String[] dictionary, int index) throws IOException {
+        if (index < 0 || index >= dictionary.length) {
+            throw new IOException("Invalid dictionary index: " + index);
+        }
+        return dictionary[index];
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = readVarint(in);
+        if (length > MAX_STRING_BYTES) {
+            throw new IOException("String too long: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Entero sin signo en LEB128 (7 bits por byte, el bit alto indica que sigue). */
+    private static int readVarint(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Varint too long");
+    }
+}
@@ -1,21 +1,44 @@
 package org.GaizkaFrost.services;
 
+import org.GaizkaFrost.models.CharacterChanges;
+import org.GaizkaFrost.models.CharacterPage;
+import org.GaizkaFrost.models.CharacterQuery;
 import org.GaizkaFrost.models.Personaje;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.OutputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * Clase de utilidad para interactuar con la API Backend.
@@ -31,12 +54,93 @@ public class HarryPotterAPI {
     private static final Logger logger = LoggerFactory.getLogger(HarryPotterAPI.class);
     private static final String BASE_URL = "http://127.0.0.1:8000";
     private static final String API_URL = BASE_URL + "/characters";
+    // La lista se descarga resumida; los detalles se piden al abrir cada ficha
+    private static final boolean SUMMARY_LIST = Boolean
+            .parseBoolean(System.getProperty("anuario.list.summary", "true"));
     private static final String AUTH_URL = BASE_URL + "/auth";
 
+    // Timeouts por endpoint (hasta recibir cabeceras)
+    private static final Duration TIMEOUT_HEALTH = Duration.ofSeconds(2);
+    private static final Duration TIMEOUT_DEFAULT = Duration.ofSeconds(15);
+    private static final Duration TIMEOUT_UPLOAD = Duration.ofSeconds(60);
+    private static final Duration TIMEOUT_SYNC = Duration.ofSeconds(60);
+    private static final Duration TIMEOUT_LIST = Duration.ofSeconds(120); // DB fría en el primer arranque
+
+    private static final int MAX_CONNECTIONS = 6;
+    private static final Duration KEEP_ALIVE = Duration.ofSeconds(30);
+
+    // El pool interno de HttpClient lee estas propiedades globales una sola vez,
+    // al crearse el primer cliente: se fijan aquí, antes de crear los
+    // transportes, y se respetan si el usuario ya las ha definido
+    static {
+        setPropertyIfAbsent("jdk.httpclient.connectionPoolSize", String.valueOf(MAX_CONNECTIONS));
+        setPropertyIfAbsent("jdk.httpclient.keepalive.timeout", String.valueOf(KEEP_ALIVE.getSeconds()));
+    }
+
+    // Transporte HTTP con pool de conexiones persistentes
+    private static volatile HttpTransport transport = new HttpClientTransport(MAX_CONNECTIONS,
+            Duration.ofSeconds(10), KEEP_ALIVE);
+    // Transporte aparte para los flujos de eventos (SSE): una descarga de
+    // imágenes puede tenerlos abiertos minutos y no deben quitar conexiones a
+    // las peticiones normales
+    private static final HttpTransport eventsTransport = new HttpClientTransport(1, Duration.ofSeconds(10),
+            KEEP_ALIVE);
+
+    // Copia local de la lista de personajes y su ETag (revalidación con 304)
+    private static final Path CACHE_DIR = LocalStorage.getDirectory("cache");
+    // Serializa la lectura de la copia local con su sustitución
+    private static final Object SNAPSHOT_LOCK = new Object();
+
+    // Imágenes en bloque (/characters/images)
+    public static final int MAX_THUMBNAILS_PER_REQUEST = 200;
+    private static final int IMAGE_FRAME_OK = 0;
+    private static final int MAX_IMAGE_BYTES = 32 * 1024 * 1024;
+
+    // Revisión del servidor de la última lista descargada (-1 si se desconoce)
+    private static volatile long lastRevision = -1;
+
     // Token de sesión para autenticación
     private static String currentToken = null;
     private static String currentUsername = null;
 
+    // ==========================================
+    // TRANSPORTE
+    // ==========================================
+
+    /**
+     * Sustituye el transporte HTTP (por ejemplo, para pruebas). El anterior se
+     * cierra.
+     */
+    public static void setTransport(HttpTransport newTransport) {
+        HttpTransport old = transport;
+        transport = newTransport;
+        if (old != null && old != newTransport) {
+            old.close();
+        }
+    }
+
+    /**
+     * Devuelve los contadores de uso del transporte (peticiones y estimación de
+     * conexiones abiertas y reutilizadas).
+     */
+    public static HttpTransport.Stats getTransportStats() {
+        return transport.getStats();
+    }
+
+    private static void setPropertyIfAbsent(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+
+    /**
+     * Cierra los transportes HTTP. Se llama al detener la aplicación.
+     */
+    public static void shutdown() {
+        transport.close();
+        eventsTransport.close();
+    }
+
     // ==========================================
     // GESTIÓN DE SESIÓN Y TOKEN
     // ==========================================
@@ -96,13 +200,8 @@ public class HarryPotterAPI {
      * Consulta el endpoint /health.
      */
     public static boolean isBackendReady() {
-        try {
-            HttpURLConnection conn = createConnection(BASE_URL + "/health", "GET");
-            conn.setConnectTimeout(2000); // 2 segundos máx para este chequeo
-            conn.setReadTimeout(2000);
-            int code = conn.getResponseCode();
-            conn.disconnect();
-            return code == 200;
+        try (HttpTransport.Response res = send("GET", BASE_URL + "/health", null, TIMEOUT_HEALTH)) {
+            return res.getStatusCode() == 200;
         } catch (Exception e) {
             return false;
         }
@@ -120,13 +219,11 @@ public class HarryPotterAPI {
         json.addProperty("username", username);
         json.addProperty("password", password);
 
-        HttpURLConnection conn = createConnection(AUTH_URL + "/login", "POST");
-        sendJson(conn, json);
-
-        if (conn.getResponseCode() == 200) {
-            String response = readResponse(conn);
-            JsonObject res = new Gson().fromJson(response, JsonObject.class);
-            return res.has("token") ? res.get("token").getAsString() : null;
+        try (HttpTransport.Response res = send("POST", AUTH_URL + "/login", json, TIMEOUT_DEFAULT)) {
+            if (res.getStatusCode() == 200) {
+                JsonObject body = new Gson().fromJson(res.readBody(), JsonObject.class);
+                return body.has("token") ? body.get("token").getAsString() : null;
+            }
         }
         return null;
     }
@@ -140,18 +237,58 @@ public class HarryPotterAPI {
         json.addProperty("password", password);
         json.addProperty("master_password", masterPassword);
 
-        HttpURLConnection conn = createConnection(AUTH_URL + "/register", "POST");
-        sendJson(conn, json);
-        return conn.getResponseCode() == 200;
+        try (HttpTransport.Response res = send("POST", AUTH_URL + "/register", json, TIMEOUT_DEFAULT)) {
+            return res.getStatusCode() == 200;
+        }
     }
 
     /**
      * Alterna el estado de favorito de un personaje.
      */
     public static boolean toggleFavorite(String characterId) throws Exception {
-        HttpURLConnection conn = createConnection(API_URL + "/" + characterId + "/favorite",
-                "POST");
-        return conn.getResponseCode() == 200;
+        try (HttpTransport.Response res = send("POST", API_URL + "/" + characterId + "/favorite", null,
+                TIMEOUT_DEFAULT)) {
+            return res.getStatusCode() == 200;
+        }
+    }
+
+    /**
+     * Marca o desmarca como favoritos varios personajes con una sola petición
+     * ({@code POST /characters/favorites}). El backend aplica todo o nada, así
+     * que si falla no ha cambiado ninguno; admite hasta 20000 ids (los
+     * personajes que llega a tener cargados el cliente) y rechaza entera una
+     * petición mayor. Los ids que no existen se ignoran.
+     *
+     * @param ids      Ids de los personajes.
+     * @param favorito Nuevo estado.
+     * @return true si el backend aplicó los cambios; false si no aplicó ninguno.
+     * @throws IOException Si el servidor no responde.
+     */
+    public static boolean setFavorites(Collection<String> ids, boolean favorito) throws IOException {
+        JsonArray lista = new JsonArray();
+        for (String id : ids) {
+            lista.add(id);
+        }
+        JsonObject body = new JsonObject();
+        body.add("ids", lista);
+        body.addProperty("is_favorite", favorito);
+        try (HttpTransport.Response res = send("POST", API_URL + "/favorites", body, TIMEOUT_DEFAULT)) {
+            if (res.getStatusCode() != 200) {
+                logger.warn("Favorites request failed with HTTP {}", res.getStatusCode());
+                return false;
+            }
+            // Ids que ya no existen en el backend (borrados desde otro cliente). El
+            // cambio ya está aplicado: una respuesta rara no lo convierte en fallo
+            try {
+                JsonObject respuesta = JsonParser.parseString(res.readBody()).getAsJsonObject();
+                if (respuesta.has("unknown") && respuesta.getAsJsonArray("unknown").size() > 0) {
+                    logger.warn("Favorites not set for unknown characters: {}", respuesta.get("unknown"));
+                }
+            } catch (RuntimeException e) {
+                logger.debug("Unexpected favorites response: {}", e.getMessage());
+            }
+            return true;
+        }
     }
 
     /**
@@ -163,15 +300,19 @@ public class HarryPotterAPI {
 
     /**
      * Sincroniza datos hacia MySQL (Push).
+     * El backend sube solo lo cambiado desde el último push, por lotes que
+     * confirma uno a uno: si se interrumpe, lo que falte se sube en el siguiente.
      */
     public static boolean syncPush() {
         return executeSyncRequest(BASE_URL + "/admin/sync-mysql");
     }
 
     private static boolean executeSyncRequest(String url) {
-        try {
-            HttpURLConnection conn = createConnection(url, "POST");
-            return conn.getResponseCode() == 200;
+        try (HttpTransport.Response res = send("POST", url, null, TIMEOUT_SYNC)) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Sync response ({}): {} {}", url, res.getStatusCode(), res.readBody());
+            }
+            return res.getStatusCode() == 200;
         } catch (Exception e) {
             logger.error("Sync Error ({}): {}", url, e.getMessage());
             return false;
@@ -180,6 +321,8 @@ public class HarryPotterAPI {
 
     /**
      * Sincronización completa (Push + Pull).
+     * Van en serie: el pull sobrescribe las filas locales con las de MySQL, así
+     * que antes deben haberse subido los cambios locales.
      */
     public static boolean fullSync() {
         logger.info("Starting Full Sync...");
@@ -194,11 +337,10 @@ public class HarryPotterAPI {
      * Obtiene el estado de la sincronización de imágenes en segundo plano.
      */
     public static JsonObject getImageSyncStatus() {
-        try {
-            HttpURLConnection conn = createConnection(BASE_URL + "/admin/sync-images/status", "GET");
-            if (conn.getResponseCode() == 200) {
-                String response = readResponse(conn);
-                return new Gson().fromJson(response, JsonObject.class);
+        try (HttpTransport.Response res = send("GET", BASE_URL + "/admin/sync-images/status", null,
+                TIMEOUT_DEFAULT)) {
+            if (res.getStatusCode() == 200) {
+                return new Gson().fromJson(res.readBody(), JsonObject.class);
             }
         } catch (Exception e) {
             logger.error("Error checking sync status: {}", e.getMessage());
@@ -206,24 +348,392 @@ public class HarryPotterAPI {
         return null;
     }
 
+    /**
+     * Sigue el progreso de la sincronización de imágenes en segundo plano a través
+     * del flujo de eventos del backend (Server-Sent Events), sin sondeos: el
+     * oyente recibe el estado cada vez que cambia. Vuelve en cuanto la descarga
+     * termina (o enseguida, si no había ninguna en curso). Usa su propia
+     * conexión, fuera del límite del transporte compartido.
+     *
+     * @param oyente Recibe cada estado ({@code running, current, total, errors})
+     *               en el hilo que llama; el último es el final.
+     * @throws IOException          Si no se puede abrir el flujo o se corta antes
+     *                              del final.
+     * @throws InterruptedException Si se interrumpe el hilo mientras se espera.
+     */
+    public static void watchImageSync(Consumer<JsonObject> oyente) throws IOException, InterruptedException {
+        Map<String, String> headers = baseHeaders();
+        headers.put("Accept", "text/event-stream");
+        try (HttpTransport.Response res = eventsTransport.send("GET", BASE_URL + "/admin/sync-images/events",
+                headers, null, TIMEOUT_DEFAULT)) {
+            if (res.getStatusCode() != 200) {
+                throw new IOException("Image sync events not available (HTTP " + res.getStatusCode() + ")");
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(res.getBody(), StandardCharsets.UTF_8));
+            String evento = "message";
+            StringBuilder datos = new StringBuilder();
+            String linea;
+            while ((linea = reader.readLine()) != null) {
+                // El servidor envía al menos un comentario cada pocos segundos
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                if (linea.isEmpty()) {
+                    // Fin del evento
+                    if (datos.length() > 0) {
+                        oyente.accept(JsonParser.parseString(datos.toString()).getAsJsonObject());
+                        if ("done".equals(evento)) {
+                            return;
+                        }
+                    }
+                    evento = "message";
+                    datos.setLength(0);
+                } else if (linea.startsWith("event:")) {
+                    evento = linea.substring(6).trim();
+                } else if (linea.startsWith("data:")) {
+                    if (datos.length() > 0) {
+                        datos.append('\n');
+                    }
+                    datos.append(linea.substring(5).trim());
+                }
+                // Las líneas que empiezan por ':' son comentarios (keepalive)
+            }
+            throw new IOException("Image sync event stream closed before completion");
+        }
+    }
+
     /**
      * Obtiene la lista de personajes.
      */
     public static List<Personaje> fetchCharacters() throws Exception {
         List<Personaje> personajes = new ArrayList<>();
-        HttpURLConnection conn = createConnection(API_URL, "GET");
-        conn.setConnectTimeout(120000); // 2 minutos para conexión inicial (DB fría)
-        conn.setReadTimeout(120000); // 2 minutos para lectura
-
-        if (conn.getResponseCode() == 200) {
-            String response = readResponse(conn);
-            JsonArray jsonArray = new Gson().fromJson(response, JsonArray.class);
-            for (JsonElement element : jsonArray) {
-                personajes.add(Personaje.fromJson(element.getAsJsonObject()));
+        fetchCharacters(personajes::add);
+        return personajes;
+    }
+
+    /**
+     * Obtiene la lista de personajes solo si ha cambiado desde la última descarga.
+     * Se revalida con el ETag guardado; si el servidor responde 304 no se
+     * transfiere ni se decodifica nada.
+     *
+     * @return La lista nueva, o null si no ha cambiado.
+     */
+    public static List<Personaje> fetchCharactersIfChanged() throws Exception {
+        List<Personaje> personajes = new ArrayList<>();
+        return fetchCharacters(personajes::add, true) < 0 ? null : personajes;
+    }
+
+    /**
+     * Descarga la lista de personajes en modo streaming.
+     * Los personajes se decodifican uno a uno con un {@link JsonReader} sobre el
+     * flujo de la conexión y se entregan al consumidor según llegan, por lo que
+     * nunca se mantiene en memoria el cuerpo completo ni el árbol JSON entero.
+     *
+     * <p>
+     * Se pide el formato binario compacto ({@link CharacterCodec}); si el
+     * servidor solo ofrece JSON, se lee JSON.
+     * </p>
+     *
+     * <p>
+     * La respuesta se guarda junto a su ETag en el directorio de datos local; si
+     * el servidor contesta 304 (sin cambios), la lista se lee de esa copia.
+     * </p>
+     *
+     * @param consumidor Recibe cada personaje decodificado (en el hilo que llama).
+     * @return Número de personajes entregados.
+     */
+    public static int fetchCharacters(Consumer<Personaje> consumidor) throws Exception {
+        return fetchCharacters(consumidor, false);
+    }
+
+    /**
+     * @param skipIfUnchanged Si es true y la lista no ha cambiado, no se lee la
+     *                        copia local y se devuelve -1.
+     */
+    private static int fetchCharacters(Consumer<Personaje> consumidor, boolean skipIfUnchanged) throws Exception {
+        // Se guarda una copia por formato; se revalida la del formato compacto
+        // si existe (es el que se pide)
+        boolean storedBinary = true;
+        String etag = readStoredEtag(snapshotFile(true), etagFile(true));
+        if (etag == null) {
+            storedBinary = false;
+            etag = readStoredEtag(snapshotFile(false), etagFile(false));
+        }
+
+        Map<String, String> headers = baseHeaders();
+        headers.put("Accept", CharacterCodec.MIMETYPE + ", application/json;q=0.9");
+        if (etag != null) {
+            headers.put("If-None-Match", etag);
+        }
+
+        // Los cambios aún no enviados se ven ya aplicados
+        consumidor = MutationOutbox.superponer(marcarResumen(consumidor));
+
+        String url = SUMMARY_LIST ? API_URL + "?view=summary" : API_URL;
+        try (HttpTransport.Response res = transport.send("GET", url, headers, null, TIMEOUT_LIST)) {
+            updateRevision(res);
+            if (res.getStatusCode() == 304 && etag != null) {
+                logger.debug("Character list not modified ({})", etag);
+                if (skipIfUnchanged) {
+                    return -1;
+                }
+                synchronized (SNAPSHOT_LOCK) {
+                    try (InputStream in = Files.newInputStream(snapshotFile(storedBinary))) {
+                        return readCharacters(in, storedBinary, consumidor);
+                    }
+                }
+            }
+            if (res.getStatusCode() != 200) {
+                return 0;
             }
+
+            String contentType = res.getHeader("Content-Type");
+            boolean binary = contentType != null && contentType.startsWith(CharacterCodec.MIMETYPE);
+            Path snapshot = snapshotFile(binary);
+            Path etagFile = etagFile(binary);
+
+            String newEtag = res.getHeader("ETag");
+            if (snapshot == null || newEtag == null) {
+                return readCharacters(res.getBody(), binary, consumidor);
+            }
+
+            // Guardar una copia del cuerpo mientras se decodifica
+            Path tmp = Files.createTempFile(CACHE_DIR, "characters", ".tmp");
+            int count;
+            try (OutputStream copy = new BufferedOutputStream(Files.newOutputStream(tmp));
+                    InputStream in = new TeeInputStream(res.getBody(), copy)) {
+                count = readCharacters(in, binary, consumidor);
+                in.transferTo(OutputStream.nullOutputStream());
+            } catch (Exception e) {
+                Files.deleteIfExists(tmp);
+                throw e;
+            }
+            synchronized (SNAPSHOT_LOCK) {
+                // El ETag se borra antes de sustituir la copia para que nunca describa
+                // un fichero distinto
+                Files.deleteIfExists(etagFile);
+                Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                Files.write(etagFile, newEtag.getBytes(StandardCharsets.UTF_8));
+                // La copia del otro formato ya no está al día
+                Files.deleteIfExists(etagFile(!binary));
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Lee la última lista descargada de la copia local, sin contactar con el
+     * backend, para poder pintar la vista principal al instante en el arranque.
+     * Solo se usa una copia completa (con su ETag guardado).
+     *
+     * @param consumidor Recibe cada personaje decodificado (en el hilo que llama).
+     * @return Número de personajes leídos, o -1 si no hay copia local.
+     */
+    public static int readSnapshot(Consumer<Personaje> consumidor) {
+        synchronized (SNAPSHOT_LOCK) {
+            for (boolean binary : new boolean[] { true, false }) {
+                Path snapshot = snapshotFile(binary);
+                if (readStoredEtag(snapshot, etagFile(binary)) == null) {
+                    continue;
+                }
+                List<Personaje> personajes = new ArrayList<>();
+                try (InputStream in = Files.newInputStream(snapshot)) {
+                    readCharacters(in, binary, marcarResumen(personajes::add));
+                } catch (Exception e) {
+                    logger.warn("Could not read local snapshot {}: {}", snapshot, e.getMessage());
+                    continue;
+                }
+                // Solo se entrega si se leyó entera
+                personajes.forEach(MutationOutbox.superponer(consumidor));
+                return personajes.size();
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Obtiene la ficha completa de un personaje.
+     *
+     * @param id Id del personaje.
+     * @return El personaje con todos sus detalles, o null si no existe.
+     * @throws IOException Si el servidor no responde o devuelve un error.
+     */
+    public static Personaje fetchCharacter(String id) throws IOException {
+        String url = API_URL + "/" + URLEncoder.encode(id, StandardCharsets.UTF_8).replace("+", "%20");
+        try (HttpTransport.Response res = send("GET", url, null, TIMEOUT_DEFAULT)) {
+            if (res.getStatusCode() == 404) {
+                return null;
+            }
+            if (res.getStatusCode() != 200) {
+                throw new IOException("Character request failed with HTTP " + res.getStatusCode());
+            }
+            Personaje p = Personaje.fromJson(JsonParser.parseString(res.readBody()).getAsJsonObject());
+            return MutationOutbox.aplicarPendientes(p) ? p : null;
+        }
+    }
+
+    /**
+     * Devuelve la revisión del servidor correspondiente a la última lista
+     * descargada, o -1 si se desconoce.
+     */
+    public static long getLastRevision() {
+        return lastRevision;
+    }
+
+    /**
+     * Obtiene los cambios de la lista de personajes posteriores a una revisión.
+     *
+     * @param since Revisión de la que parte el cliente (ver
+     *              {@link #getLastRevision()}).
+     * @return Los cambios, o null si no se pudieron obtener.
+     */
+    public static CharacterChanges fetchChanges(long since) {
+        try (HttpTransport.Response res = send("GET", API_URL + "/changes?since=" + since, null,
+                TIMEOUT_DEFAULT)) {
+            if (res.getStatusCode() != 200) {
+                logger.warn("Changes request failed with HTTP {}", res.getStatusCode());
+                return null;
+            }
+            JsonObject obj = JsonParser.parseString(res.readBody()).getAsJsonObject();
+            List<Personaje> upserts = new ArrayList<>();
+            List<String> deleted = new ArrayList<>();
+            for (JsonElement e : obj.getAsJsonArray("upserts")) {
+                Personaje p = Personaje.fromJson(e.getAsJsonObject());
+                if (MutationOutbox.aplicarPendientes(p)) {
+                    upserts.add(p);
+                } else {
+                    deleted.add(p.getApiId()); // Borrado pendiente de enviar
+                }
+            }
+            for (JsonElement e : obj.getAsJsonArray("deleted")) {
+                deleted.add(e.getAsString());
+            }
+            CharacterChanges changes = new CharacterChanges(obj.get("revision").getAsLong(),
+                    obj.get("reset").getAsBoolean(), upserts, deleted);
+            if (!changes.isReset()) {
+                lastRevision = changes.getRevision();
+            }
+            return changes;
+        } catch (Exception e) {
+            logger.error("Error fetching changes since {}: {}", since, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Número de personajes en la base de datos local del backend, según /health.
+     *
+     * @return El número, o -1 si no se pudo obtener.
+     */
+    public static int getCharacterCount() {
+        try (HttpTransport.Response res = send("GET", BASE_URL + "/health", null, TIMEOUT_HEALTH)) {
+            if (res.getStatusCode() == 200) {
+                JsonObject obj = JsonParser.parseString(res.readBody()).getAsJsonObject();
+                JsonElement count = obj.get("cached_characters");
+                if (count != null && count.isJsonPrimitive()) {
+                    return count.getAsInt();
+                }
+            }
+        } catch (Exception e) {
+            logger.debug("Could not read character count: {}", e.getMessage());
+        }
+        return -1;
+    }
+
+    /**
+     * Obtiene una página de personajes filtrada y ordenada por el servidor.
+     *
+     * @param query  Filtros, orden y tamaño de página.
+     * @param cursor Cursor devuelto en la página anterior, o null para la primera.
+     * @return La página de resultados.
+     * @throws IOException Si el servidor no responde o rechaza la consulta.
+     */
+    public static CharacterPage queryCharacters(CharacterQuery query, String cursor) throws IOException {
+        String url = API_URL + "/query?" + query.toQueryString(cursor);
+        try (HttpTransport.Response res = send("GET", url, null, TIMEOUT_DEFAULT)) {
+            if (res.getStatusCode() != 200) {
+                throw new IOException("Character query failed with HTTP " + res.getStatusCode());
+            }
+            JsonObject obj = JsonParser.parseString(res.readBody()).getAsJsonObject();
+            List<Personaje> items = new ArrayList<>();
+            for (JsonElement e : obj.getAsJsonArray("items")) {
+                items.add(Personaje.fromJson(e.getAsJsonObject()));
+            }
+            JsonElement next = obj.get("next_cursor");
+            JsonElement total = obj.get("total");
+            List<String> houses = null;
+            if (obj.has("houses")) {
+                houses = new ArrayList<>();
+                for (JsonElement e : obj.getAsJsonArray("houses")) {
+                    houses.add(e.getAsString());
+                }
+            }
+            return new CharacterPage(items,
+                    next == null || next.isJsonNull() ? null : next.getAsString(),
+                    total == null || total.isJsonNull() ? -1 : total.getAsInt(),
+                    houses);
+        }
+    }
+
+    private static void updateRevision(HttpTransport.Response res) {
+        String revision = res.getHeader("X-Revision");
+        if (revision != null) {
+            try {
+                lastRevision = Long.parseLong(revision.trim());
+            } catch (NumberFormatException e) {
+                logger.debug("Invalid X-Revision header: {}", revision);
+            }
+        }
+    }
+
+    /** En modo resumen, marca los personajes de la lista como resumidos. */
+    private static Consumer<Personaje> marcarResumen(Consumer<Personaje> consumidor) {
+        if (!SUMMARY_LIST) {
+            return consumidor;
+        }
+        return p -> {
+            p.setResumen(true);
+            consumidor.accept(p);
+        };
+    }
+
+    private static Path snapshotFile(boolean binary) {
+        return CACHE_DIR != null ? CACHE_DIR.resolve(binary ? "characters.bin" : "characters.json") : null;
+    }
+
+    private static Path etagFile(boolean binary) {
+        return CACHE_DIR != null ? CACHE_DIR.resolve(binary ? "characters.bin.etag" : "characters.etag") : null;
+    }
+
+    private static int readCharacters(InputStream body, boolean binary, Consumer<Personaje> consumidor)
+            throws IOException {
+        if (binary) {
+            return CharacterCodec.read(body, consumidor);
+        }
+        int count = 0;
+        JsonReader reader = new JsonReader(new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8)));
+        reader.beginArray();
+        while (reader.hasNext()) {
+            // Solo el registro actual vive como árbol JSON
+            JsonObject obj = JsonParser.parseReader(reader).getAsJsonObject();
+            consumidor.accept(Personaje.fromJson(obj));
+            count++;
+        }
+        reader.endArray();
+        return count;
+    }
+
+    private static String readStoredEtag(Path snapshot, Path etagFile) {
+        if (snapshot == null || !Files.isRegularFile(snapshot) || !Files.isRegularFile(etagFile)) {
+            return null;
+        }
+        try {
+            String etag = new String(Files.readAllBytes(etagFile), StandardCharsets.UTF_8).trim();
+            return etag.isEmpty() ? null : etag;
+        } catch (IOException e) {
+            logger.debug("Could not read stored ETag: {}", e.getMessage());
+            return null;
         }
-        conn.disconnect();
-        return personajes;
     }
 
     // ==========================================
@@ -244,17 +754,13 @@ public class HarryPotterAPI {
             return null;
         }
 
-        HttpURLConnection conn = createConnection(API_URL, "POST");
-        sendJson(conn, personaje);
-
-        int responseCode = conn.getResponseCode();
-        if (responseCode == 201 || responseCode == 200) {
-            String response = readResponse(conn);
-            JsonObject res = new Gson().fromJson(response, JsonObject.class);
-            conn.disconnect();
-            return res.has("id") ? res.get("id").getAsString() : null;
+        try (HttpTransport.Response res = send("POST", API_URL, personaje, TIMEOUT_DEFAULT)) {
+            int responseCode = res.getStatusCode();
+            if (responseCode == 201 || responseCode == 200) {
+                JsonObject body = new Gson().fromJson(res.readBody(), JsonObject.class);
+                return body.has("id") ? body.get("id").getAsString() : null;
+            }
         }
-        conn.disconnect();
         return null;
     }
 
@@ -271,13 +777,10 @@ public class HarryPotterAPI {
 
         String boundary = "---" + System.currentTimeMillis();
         String url = API_URL + "/" + characterId + "/upload-image";
-        HttpURLConnection conn = createConnection(url, "POST");
-        conn.setRequestProperty("Content-Type", "multipart/form-data; boundary=" + boundary);
-        conn.setDoOutput(true);
 
-        try (java.io.OutputStream os = conn.getOutputStream();
-                java.io.PrintWriter writer = new java.io.PrintWriter(new java.io.OutputStreamWriter(os, "UTF-8"),
-                        true)) {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (java.io.PrintWriter writer = new java.io.PrintWriter(new java.io.OutputStreamWriter(os, "UTF-8"),
+                true)) {
 
             writer.append("--" + boundary).append("\r\n");
             writer.append("Content-Disposition: form-data; name=\"image\"; filename=\"" + imageFile.getName() + "\"")
@@ -297,7 +800,11 @@ public class HarryPotterAPI {
             writer.append("--" + boundary + "--").append("\r\n").flush();
         }
 
-        return conn.getResponseCode() == 200;
+        Map<String, String> headers = baseHeaders();
+        headers.put("Content-Type", "multipart/form-data; boundary=" + boundary);
+        try (HttpTransport.Response res = transport.send("POST", url, headers, os.toByteArray(), TIMEOUT_UPLOAD)) {
+            return res.getStatusCode() == 200;
+        }
     }
 
     /**
@@ -315,12 +822,9 @@ public class HarryPotterAPI {
         }
 
         String url = API_URL + "/" + characterId;
-        HttpURLConnection conn = createConnection(url, "PUT");
-        sendJson(conn, datosActualizados);
-
-        int responseCode = conn.getResponseCode();
-        conn.disconnect();
-        return responseCode == 200;
+        try (HttpTransport.Response res = send("PUT", url, datosActualizados, TIMEOUT_DEFAULT)) {
+            return res.getStatusCode() == 200;
+        }
     }
 
     /**
@@ -337,54 +841,261 @@ public class HarryPotterAPI {
         }
 
         String url = API_URL + "/" + characterId;
-        HttpURLConnection conn = createConnection(url, "DELETE");
+        try (HttpTransport.Response res = send("DELETE", url, null, TIMEOUT_DEFAULT)) {
+            return res.getStatusCode() == 200;
+        }
+    }
+
+    /**
+     * Aplica varios cambios (ediciones, borrados y favoritos) en una sola
+     * petición ({@code POST /characters/batch}). Lo usa {@link MutationOutbox}.
+     *
+     * @param mutaciones Cambios a aplicar, en orden.
+     * @return Un resultado por cambio ({@code id}, {@code op}, {@code status}), en
+     *         el mismo orden.
+     * @throws HttpStatusException Si el servidor rechaza el lote entero.
+     * @throws IOException         Si el servidor no responde.
+     */
+    public static JsonArray applyMutations(JsonArray mutaciones) throws IOException {
+        JsonObject body = new JsonObject();
+        body.add("mutations", mutaciones);
+        try (HttpTransport.Response res = send("POST", API_URL + "/batch", body, TIMEOUT_DEFAULT)) {
+            if (res.getStatusCode() != 200) {
+                throw new HttpStatusException("Batch request", res.getStatusCode());
+            }
+            return JsonParser.parseString(res.readBody()).getAsJsonObject().getAsJsonArray("results");
+        }
+    }
+
+    // ==========================================
+    // IMÁGENES
+    // ==========================================
+
+    /**
+     * Descarga los bytes de una imagen (miniatura de un personaje) usando el
+     * transporte compartido.
+     *
+     * @param url URL absoluta de la imagen.
+     * @return Los bytes de la imagen o null si el servidor no la tiene.
+     */
+    public static byte[] fetchImage(String url) throws IOException {
+        try (HttpTransport.Response res = send("GET", url, null, TIMEOUT_DEFAULT)) {
+            if (res.getStatusCode() != 200) {
+                logger.debug("Image not available ({}): {}", res.getStatusCode(), url);
+                return null;
+            }
+            return res.getBody().readAllBytes();
+        }
+    }
+
+    /**
+     * Descarga las miniaturas de varios personajes en una sola petición
+     * ({@code GET /characters/images?ids=...&size=thumb}).
+     * La respuesta es una secuencia de tramas, una por id:
+     * {@code u16 longitud del id | id UTF-8 | u8 estado | u32 longitud | bytes}.
+     *
+     * @param ids Ids de los personajes (como máximo {@link #MAX_THUMBNAILS_PER_REQUEST}).
+     * @return Bytes JPEG por id; los personajes sin imagen guardada en el servidor
+     *         no aparecen (hay que pedirlos con {@link #fetchImage(String)}).
+     * @throws IOException Si la petición falla o la respuesta está mal formada.
+     */
+    public static Map<String, byte[]> fetchThumbnails(List<String> ids) throws IOException {
+        Map<String, byte[]> thumbnails = new HashMap<>();
+        if (ids.isEmpty()) {
+            return thumbnails;
+        }
+        StringBuilder query = new StringBuilder();
+        for (String id : ids) {
+            if (query.length() > 0) {
+                query.append(',');
+            }
+            query.append(URLEncoder.encode(id, StandardCharsets.UTF_8));
+        }
+
+        String url = API_URL + "/images?size=thumb&ids=" + query;
+        try (HttpTransport.Response res = send("GET", url, null, TIMEOUT_DEFAULT)) {
+            if (res.getStatusCode() != 200) {
+                throw new IOException("Bulk image request failed (" + res.getStatusCode() + ")");
+            }
+            DataInputStream in = new DataInputStream(new BufferedInputStream(res.getBody()));
+            int first;
+            while ((first = in.read()) != -1) {
+                int idLength = (first << 8) | in.readUnsignedByte();
+                byte[] idBytes = new byte[idLength];
+                in.readFully(idBytes);
+                int status = in.readUnsignedByte();
+                int length = in.readInt();
+                if (length < 0 || length > MAX_IMAGE_BYTES) {
+                    throw new IOException("Invalid image frame length: " + length);
+                }
+                byte[] data = new byte[length];
+                in.readFully(data);
+                if (status == IMAGE_FRAME_OK && length > 0) {
+                    thumbnails.put(new String(idBytes, StandardCharsets.UTF_8), data);
+                }
+            }
+        }
+        logger.debug("Fetched {}/{} thumbnails in one request", thumbnails.size(), ids.size());
+        return thumbnails;
+    }
+
+    // ==========================================
+    // API ASÍNCRONA
+    // ==========================================
+    // Variantes no bloqueantes de las llamadas anteriores. Se ejecutan en el
+    // pool NETWORK de BackgroundTasks; los callbacks NO se ejecutan en el hilo de
+    // JavaFX, así que la UI debe actualizarse con Platform.runLater.
+
+    public static CompletableFuture<Boolean> isBackendReadyAsync() {
+        return async(HarryPotterAPI::isBackendReady);
+    }
+
+    public static CompletableFuture<String> loginAsync(String username, String password) {
+        return async(() -> login(username, password));
+    }
+
+    public static CompletableFuture<Boolean> registerAsync(String username, String password,
+            String masterPassword) {
+        return async(() -> register(username, password, masterPassword));
+    }
+
+    public static CompletableFuture<List<Personaje>> fetchCharactersAsync() {
+        return async(HarryPotterAPI::fetchCharacters);
+    }
+
+    public static CompletableFuture<Personaje> fetchCharacterAsync(String id) {
+        return async(() -> fetchCharacter(id));
+    }
+
+    public static CompletableFuture<Boolean> toggleFavoriteAsync(String characterId) {
+        return async(() -> toggleFavorite(characterId));
+    }
+
+    public static CompletableFuture<Boolean> setFavoritesAsync(Collection<String> ids, boolean favorito) {
+        return async(() -> setFavorites(ids, favorito));
+    }
+
+    public static CompletableFuture<String> addCharacterAsync(JsonObject personaje) {
+        return async(() -> addCharacter(personaje));
+    }
+
+    public static CompletableFuture<Boolean> editCharacterAsync(String characterId, JsonObject datosActualizados) {
+        return async(() -> editCharacter(characterId, datosActualizados));
+    }
+
+    public static CompletableFuture<Boolean> deleteCharacterAsync(String characterId) {
+        return async(() -> deleteCharacter(characterId));
+    }
+
+    public static CompletableFuture<Boolean> uploadImageAsync(String characterId, java.io.File imageFile) {
+        return async(() -> uploadImage(characterId, imageFile));
+    }
+
+    public static CompletableFuture<CharacterChanges> fetchChangesAsync(long since) {
+        return async(() -> fetchChanges(since));
+    }
 
-        int responseCode = conn.getResponseCode();
-        conn.disconnect();
-        return responseCode == 200;
+    public static CompletableFuture<Boolean> syncPushAsync() {
+        return async(HarryPotterAPI::syncPush);
+    }
+
+    public static CompletableFuture<Boolean> syncPullAsync() {
+        return async(HarryPotterAPI::syncPull);
+    }
+
+    public static CompletableFuture<Boolean> fullSyncAsync() {
+        return async(HarryPotterAPI::fullSync);
     }
 
     // ==========================================
     // MÉTODOS AUXILIARES PRIVADOS (HELPERS)
     // ==========================================
 
-    private static HttpURLConnection createConnection(String urlStr, String method) throws Exception {
-        URL url = new URL(urlStr);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod(method);
-        // Aumentar timeouts por defecto para evitar problemas en cargas iniciales
-        // lentas (EXE)
-        conn.setConnectTimeout(60000); // 60s
-        conn.setReadTimeout(60000); // 60s
+    /**
+     * Ejecuta una llamada en el pool de red. Si está saturado, el futuro se
+     * completa con una excepción en lugar de crear más hilos.
+     */
+    private static <T> CompletableFuture<T> async(Callable<T> call) {
+        return BackgroundTasks.submit(BackgroundTasks.Workload.NETWORK, call);
+    }
 
+    /**
+     * Envía una petición a través del transporte, con cuerpo JSON opcional.
+     * El llamador debe cerrar la respuesta.
+     */
+    private static HttpTransport.Response send(String method, String url, JsonObject json, Duration timeout)
+            throws IOException {
+        Map<String, String> headers = baseHeaders();
+        byte[] body = null;
+        if (json != null) {
+            headers.put("Content-Type", "application/json");
+            body = json.toString().getBytes(StandardCharsets.UTF_8);
+        }
+        return transport.send(method, url, headers, body, timeout);
+    }
+
+    private static Map<String, String> baseHeaders() {
+        Map<String, String> headers = new HashMap<>();
         // Incluir token de autenticación si existe
         if (currentToken != null && !currentToken.isEmpty()) {
-            conn.setRequestProperty("Authorization", currentToken);
+            headers.put("Authorization", currentToken);
+        }
+        return headers;
+    }
+
+    /**
+     * Flujo que copia en {@code copy} todo lo que se lee de {@code in}.
+     */
+    private static final class TeeInputStream extends FilterInputStream {
+
+        private final OutputStream copy;
+
+        TeeInputStream(InputStream in, OutputStream copy) {
+            super(in);
+            this.copy = copy;
         }
 
-        if ("POST".equals(method) || "PUT".equals(method) || "PATCH".equals(method) || "DELETE".equals(method)) {
-            conn.setDoOutput(true);
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0)
+                copy.write(b);
+            return b;
         }
-        return conn;
-    }
 
-    private static void sendJson(HttpURLConnection conn, JsonObject json) throws Exception {
-        conn.setRequestProperty("Content-Type", "application/json");
-        try (java.io.OutputStream os = conn.getOutputStream()) {
-            byte[] input = json.toString().getBytes("utf-8");
-            os.write(input, 0, input.length);
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            int n = in.read(buf, off, len);
+            if (n > 0)
+                copy.write(buf, off, n);
+            return n;
         }
-    }
 
-    private static String readResponse(HttpURLConnection conn) throws Exception {
-        try (BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream(), "utf-8"))) {
-            StringBuilder response = new StringBuilder();
-            String line;
-            while ((line = in.readLine()) != null) {
-                response.append(line);
-            }
-            return response.toString();
+        @Override
+        public long skip(long n) throws IOException {
+            // Se lee en lugar de saltar para que la copia quede completa
+            if (n <= 0)
+                return 0;
+            byte[] buf = new byte[(int) Math.min(n, 8192)];
+            return Math.max(read(buf, 0, buf.length), 0);
         }
     }
 
+    /**
+     * El servidor respondió, pero con un código de error: a diferencia de un
+     * fallo de red, repetir la petición no suele servir de nada.
+     */
+    public static final class HttpStatusException extends IOException {
+
+        private final int statusCode;
+
+        HttpStatusException(String peticion, int statusCode) {
+            super(peticion + " failed with HTTP " + statusCode);
+            this.statusCode = statusCode;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+    }
 }
@@ -0,0 +1,348 @@
+package org.GaizkaFrost.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PushbackInputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Transporte HTTP basado en {@link java.net.http.HttpClient} con conexiones
+ * persistentes (keep-alive).
+ * El número de peticiones simultáneas está limitado por un semáforo, de modo
+ * que el pool nunca abre más conexiones que {@code maxConnections}.
+ *
+ * <p>
+ * HttpClient no expone su pool interno, así que los contadores de conexiones
+ * abiertas/reutilizadas son una estimación (y así se llaman): una respuesta
+ * leída por completo deja su conexión libre durante {@code keepAlive}; la
+ * siguiente petición que la encuentre libre cuenta como reutilización, aunque
+ * el servidor haya cerrado la conexión entretanto.
+ * </p>
+ *
+ * <p>
+ * El tamaño del pool interno y su keep-alive son propiedades globales de la
+ * JVM ({@code jdk.httpclient.*}) que no se fijan aquí, sino una sola vez en
+ * {@link HarryPotterAPI}.
+ * </p>
+ *
+ * <p>
+ * Las respuestas se piden comprimidas ({@code Accept-Encoding: gzip, deflate})
+ * y se descomprimen al vuelo según se leen; al cerrar cada respuesta se
+ * registran (nivel DEBUG) los bytes recibidos y los descomprimidos.
+ * </p>
+ *
+ * @author Gaizka
+ * @author Xiker
+ * @author Diego
+ */
+public class HttpClientTransport implements HttpTransport {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpClientTransport.class);
+
+    /** Bytes que se descartan como máximo al cerrar una respuesta no leída. */
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+    private static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    private final HttpClient client;
+    private final Semaphore permits;
+    private final int maxConnections;
+    private final long keepAliveMillis;
+
+    // Marcas de tiempo de las conexiones que quedaron libres (estimación del pool)
+    private final Deque<Long> idleConnections = new ArrayDeque<>();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong estimatedOpened = new AtomicLong();
+    private final AtomicLong estimatedReused = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * Crea el transporte.
+     *
+     * @param maxConnections Conexiones (y peticiones simultáneas) máximas.
+     * @param connectTimeout Tiempo máximo para establecer una conexión nueva.
+     * @param keepAlive      Tiempo que una conexión libre se mantiene abierta.
+     */
+    public HttpClientTransport(int maxConnections, Duration connectTimeout, Duration keepAlive) {
+        this.maxConnections = maxConnections;
+        this.keepAliveMillis = keepAlive.toMillis();
+        this.permits = new Semaphore(maxConnections, true);
+
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+
+    @Override
+    public Response send(String method, String url, Map<String, String> headers, byte[] body, Duration timeout)
+            throws IOException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                .timeout(timeout)
+                .method(method, body != null
+                        ? HttpRequest.BodyPublishers.ofByteArray(body)
+                        : HttpRequest.BodyPublishers.noBody());
+        boolean encodingSet = false;
+        if (headers != null) {
+            headers.forEach(builder::header);
+            encodingSet = headers.keySet().stream().anyMatch("Accept-Encoding"::equalsIgnoreCase);
+        }
+        if (!encodingSet) {
+            builder.header("Accept-Encoding", ACCEPT_ENCODING);
+        }
+
+        try {
+            if (!permits.tryAcquire(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                failures.incrementAndGet();
+                throw new IOException("No free connection to " + url + " after " + timeout.toMillis() + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a connection");
+        }
+
+        requests.incrementAndGet();
+        inFlight.incrementAndGet();
+        if (takeIdleConnection()) {
+            estimatedReused.incrementAndGet();
+        } else {
+            estimatedOpened.incrementAndGet();
+        }
+
+        HttpResponse<InputStream> response;
+        try {
+            response = client.send(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            release(false);
+            failures.incrementAndGet();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted during " + method + " " + url);
+        } catch (IOException | RuntimeException e) {
+            release(false);
+            failures.incrementAndGet();
+            throw e;
+        }
+
+        // Un flujo de eventos no termina por sí solo: no se vacía al cerrarlo
+        boolean eventStream = response.headers().firstValue("Content-Type").orElse("")
+                .startsWith("text/event-stream");
+        DrainOnClose drain = new DrainOnClose(response.body(), !eventStream);
+        CountingInputStream wire = new CountingInputStream(drain);
+        String encoding = response.headers().firstValue("Content-Encoding").orElse("identity").trim();
+        InputStream decoded;
+        try {
+            decoded = decode(wire, encoding);
+        } catch (IOException e) {
+            drain.close();
+            release(false);
+            failures.incrementAndGet();
+            throw e;
+        }
+        CountingInputStream contenido = new CountingInputStream(decoded);
+        return new Response(response.statusCode(), response.headers().map(), contenido, () -> {
+            if (logger.isDebugEnabled()) {
+                logger.debug("{} {} -> {}: {} bytes received, {} bytes decoded ({})", method, url,
+                        response.statusCode(), wire.count, contenido.count, encoding);
+            }
+            release(drain.reachedEnd);
+        });
+    }
+
+    /**
+     * Envuelve el cuerpo con el descompresor que indique Content-Encoding.
+     * Un cuerpo vacío (p. ej. un 304) se devuelve vacío.
+     */
+    private static InputStream decode(InputStream in, String encoding) throws IOException {
+        if (encoding.equalsIgnoreCase("gzip") || encoding.equalsIgnoreCase("x-gzip")) {
+            try {
+                return new GZIPInputStream(in, 8192);
+            } catch (EOFException e) {
+                return InputStream.nullInputStream();
+            }
+        }
+        if (encoding.equalsIgnoreCase("deflate")) {
+            // "deflate" debería ir con envoltorio zlib, pero algunos servidores
+            // envían deflate sin él: se distingue por la cabecera zlib
+            PushbackInputStream pb = new PushbackInputStream(in, 2);
+            int cmf = pb.read();
+            int flg = cmf < 0 ? -1 : pb.read();
+            if (flg < 0) {
+                return InputStream.nullInputStream();
+            }
+            pb.unread(flg);
+            pb.unread(cmf);
+            boolean zlib = (cmf & 0x0F) == 8 && ((cmf << 8) | flg) % 31 == 0;
+            Inflater inflater = new Inflater(!zlib);
+            return new InflaterInputStream(pb, inflater, 8192) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        inflater.end(); // Un Inflater propio no se libera solo
+                    }
+                }
+            };
+        }
+        return in;
+    }
+
+    /**
+     * Devuelve el permiso y, si el cuerpo se consumió entero, marca la conexión
+     * como libre para ser reutilizada.
+     */
+    private void release(boolean reusable) {
+        if (reusable) {
+            synchronized (idleConnections) {
+                if (idleConnections.size() < maxConnections) {
+                    idleConnections.addLast(System.currentTimeMillis());
+                }
+            }
+        }
+        inFlight.decrementAndGet();
+        permits.release();
+    }
+
+    private boolean takeIdleConnection() {
+        long now = System.currentTimeMillis();
+        synchronized (idleConnections) {
+            while (!idleConnections.isEmpty()) {
+                long since = idleConnections.pollLast();
+                if (now - since < keepAliveMillis) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Stats getStats() {
+        return new Stats(requests.get(), failures.get(), estimatedOpened.get(), estimatedReused.get(),
+                inFlight.get());
+    }
+
+    @Override
+    public void close() {
+        logger.info("HTTP transport closed ({})", getStats());
+        synchronized (idleConnections) {
+            idleConnections.clear();
+        }
+    }
+
+    /**
+     * Flujo que cuenta los bytes leídos.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private volatile long count = 0;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0)
+                count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            int n = in.read(buf, off, len);
+            if (n > 0)
+                count += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    /**
+     * Flujo que, al cerrarse, descarta el resto del cuerpo (hasta un límite) para
+     * que la conexión pueda volver al pool en lugar de cerrarse.
+     */
+    private static final class DrainOnClose extends InputStream {
+
+        private final InputStream in;
+        private final boolean drainOnClose;
+        private volatile boolean reachedEnd = false;
+
+        DrainOnClose(InputStream in, boolean drainOnClose) {
+            this.in = in;
+            this.drainOnClose = drainOnClose;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b < 0)
+                reachedEnd = true;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            int n = in.read(buf, off, len);
+            if (n < 0)
+                reachedEnd = true;
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return in.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (!reachedEnd && drainOnClose) {
+                    byte[] buf = new byte[8192];
+                    int drained = 0;
+                    while (drained < MAX_DRAIN_BYTES) {
+                        int n = in.read(buf);
+                        if (n < 0) {
+                            reachedEnd = true;
+                            break;
+                        }
+                        drained += n;
+                    }
+                }
+            } catch (IOException e) {
+                reachedEnd = false;
+            } finally {
+                in.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package org.GaizkaFrost.services;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Capa de transporte HTTP utilizada por {@link HarryPotterAPI}.
+ * Permite sustituir la implementación (pool de conexiones persistentes, mocks,
+ * etc.) sin tocar la lógica de la API.
+ *
+ * @author Gaizka
+ * @author Xiker
+ * @author Diego
+ */
+public interface HttpTransport extends AutoCloseable {
+
+    /**
+     * Envía una petición y devuelve la respuesta con el cuerpo sin leer.
+     * El llamador debe cerrar la respuesta para devolver la conexión al pool.
+     *
+     * @param method  Método HTTP (GET, POST, PUT, DELETE...).
+     * @param url     URL absoluta.
+     * @param headers Cabeceras a añadir (puede ser vacío).
+     * @param body    Cuerpo de la petición o null si no tiene.
+     * @param timeout Tiempo máximo de espera hasta recibir las cabeceras.
+     * @return La respuesta recibida.
+     * @throws IOException Si falla la conexión o se agota el tiempo.
+     */
+    Response send(String method, String url, Map<String, String> headers, byte[] body, Duration timeout)
+            throws IOException;
+
+    /**
+     * Devuelve una instantánea de los contadores de uso del transporte.
+     */
+    Stats getStats();
+
+    /**
+     * Libera los recursos del transporte (pool de conexiones, hilos).
+     */
+    @Override
+    void close();
+
+    /**
+     * Respuesta HTTP con el cuerpo expuesto como flujo para permitir lectura en
+     * streaming.
+     */
+    final class Response implements Closeable {
+
+        private final int statusCode;
+        private final Map<String, List<String>> headers;
+        private final InputStream body;
+        private final Runnable onClose;
+        private boolean closed = false;
+
+        public Response(int statusCode, Map<String, List<String>> headers, InputStream body, Runnable onClose) {
+            this.statusCode = statusCode;
+            this.headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            if (headers != null) {
+                this.headers.putAll(headers);
+            }
+            this.body = body != null ? body : InputStream.nullInputStream();
+            this.onClose = onClose;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        /**
+         * Devuelve el primer valor de una cabecera (sin distinguir mayúsculas) o
+         * null si no existe.
+         */
+        public String getHeader(String name) {
+            List<String> values = headers.get(name);
+            return (values == null || values.isEmpty()) ? null : values.get(0);
+        }
+
+        public Map<String, List<String>> getHeaders() {
+            return Collections.unmodifiableMap(headers);
+        }
+
+        public InputStream getBody() {
+            return body;
+        }
+
+        /**
+         * Lee el cuerpo completo como texto UTF-8.
+         */
+        public String readBody() throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            body.transferTo(out);
+            return out.toString(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void close() {
+            if (closed)
+                return;
+            closed = true;
+            try {
+                body.close();
+            } catch (IOException ignored) {
+            }
+            if (onClose != null) {
+                onClose.run();
+            }
+        }
+    }
+
+    /**
+     * Contadores de uso del transporte. Las conexiones abiertas y reutilizadas
+     * son una estimación del transporte, no un recuento de sockets.
+     */
+    final class Stats {
+
+        private final long requests;
+        private final long failures;
+        private final long estimatedConnectionsOpened;
+        private final long estimatedConnectionsReused;
+        private final int inFlight;
+
+        public Stats(long requests, long failures, long estimatedConnectionsOpened,
+                long estimatedConnectionsReused, int inFlight) {
+            this.requests = requests;
+            this.failures = failures;
+            this.estimatedConnectionsOpened = estimatedConnectionsOpened;
+            this.estimatedConnectionsReused = estimatedConnectionsReused;
+            this.inFlight = inFlight;
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        public long getEstimatedConnectionsOpened() {
+            return estimatedConnectionsOpened;
+        }
+
+        public long getEstimatedConnectionsReused() {
+            return estimatedConnectionsReused;
+        }
+
+        public int getInFlight() {
+            return inFlight;
+        }
+
+        @Override
+        public String toString() {
+            return "requests=" + requests + ", failures=" + failures + ", estimatedOpened="
+                    + estimatedConnectionsOpened + ", estimatedReused=" + estimatedConnectionsReused
+                    + ", inFlight=" + inFlight;
+        }
+    }
+}
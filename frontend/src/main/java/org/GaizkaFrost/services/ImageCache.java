@@ -0,0 +1,439 @@
+package org.GaizkaFrost.services;
+
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caché de imágenes de personajes en dos niveles:
+ * <ul>
+ * <li>Memoria: imágenes ya decodificadas, por id y ancho, con expulsión LRU
+ * según los bytes que ocupan (ancho x alto x 4).</li>
+ * <li>Disco: bytes descargados del backend, por id, en
+ * {@code <dataDir>/images}: la imagen original ({@code <id>.img}) y la
+ * miniatura ({@code <id>.thumb.img}), con expulsión LRU (por fecha de último
+ * uso) cuando el directorio pasa de {@code anuario.imageCache.diskMB}.</li>
+ * </ul>
+ * Las descargas y la decodificación se hacen en segundo plano
+ * ({@link BackgroundTasks}); varias peticiones de la misma imagen comparten una
+ * única carga. Las miniaturas que faltan se piden al backend en bloque
+ * ({@link ThumbnailBatcher}), de modo que una pantalla de tarjetas cuesta una
+ * sola petición. Las entradas de un personaje cambiado en el backend se
+ * descartan con {@link #invalidate(Collection)}.
+ *
+ * @author Gaizka
+ * @author Xiker
+ * @author Diego
+ */
+public final class ImageCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageCache.class);
+
+    /** Ancho de las miniaturas de las tarjetas. */
+    public static final int THUMBNAIL_WIDTH = 320;
+    /** Ancho que indica "tamaño original". */
+    public static final int FULL_SIZE = 0;
+
+    private static final long MEMORY_BUDGET = Long.getLong("anuario.imageCache.memoryMB", 64) * 1024 * 1024;
+    private static final long DISK_BUDGET = Long.getLong("anuario.imageCache.diskMB", 256) * 1024 * 1024;
+    private static final String VIEW_KEY = "anuario.imageKey";
+
+    // LinkedHashMap en orden de acceso: el primero es el menos usado
+    private static final LinkedHashMap<String, Image> memory = new LinkedHashMap<>(256, 0.75f, true);
+    private static long memoryBytes = 0;
+
+    private static final Map<String, CompletableFuture<Image>> loading = new ConcurrentHashMap<>();
+    private static final Path diskDir = LocalStorage.getDirectory("images");
+    // Bytes ocupados en disco; -1 hasta que se recorre el directorio por primera vez
+    private static long diskBytes = -1;
+    private static final Object diskLock = new Object();
+    private static final ThumbnailBatcher thumbnails = new ThumbnailBatcher();
+
+    private ImageCache() {
+    }
+
+    // ==========================================
+    // API PÚBLICA
+    // ==========================================
+
+    /**
+     * Muestra la imagen de un personaje en un ImageView.
+     * Si está en memoria se asigna al instante; si no, se carga en segundo plano y
+     * se asigna en el hilo de JavaFX, siempre que el ImageView no se haya
+     * reutilizado mientras tanto para otra imagen.
+     *
+     * @param view  ImageView destino.
+     * @param id    Id del personaje (clave de la caché).
+     * @param url   URL de la imagen.
+     * @param width Ancho de decodificación, o {@link #FULL_SIZE}.
+     */
+    public static void bind(ImageView view, String id, String url, int width) {
+        if (url == null || url.isEmpty()) {
+            view.getProperties().remove(VIEW_KEY);
+            view.setImage(null);
+            return;
+        }
+        String key = key(id, url, width);
+        view.getProperties().put(VIEW_KEY, key);
+
+        Image cached = getIfPresent(key);
+        if (cached != null) {
+            view.setImage(cached);
+            return;
+        }
+        view.setImage(null);
+        load(id, url, width).thenAccept(image -> Platform.runLater(() -> {
+            if (key.equals(view.getProperties().get(VIEW_KEY))) {
+                view.setImage(image);
+            }
+        }));
+    }
+
+    /**
+     * Desvincula un ImageView de la caché para que una carga pendiente no
+     * sustituya la imagen que se le asigne a mano.
+     *
+     * @param view ImageView a desvincular.
+     */
+    public static void unbind(ImageView view) {
+        view.getProperties().remove(VIEW_KEY);
+    }
+
+    /**
+     * Obtiene la imagen de un personaje: de memoria, de disco o de la red, en ese
+     * orden. El futuro se completa con null si la imagen no se pudo cargar.
+     *
+     * @param id    Id del personaje (clave de la caché).
+     * @param url   URL de la imagen.
+     * @param width Ancho de decodificación, o {@link #FULL_SIZE}.
+     * @return Futuro con la imagen.
+     */
+    public static CompletableFuture<Image> load(String id, String url, int width) {
+        String key = key(id, url, width);
+        Image cached = getIfPresent(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        CompletableFuture<Image> created = new CompletableFuture<>();
+        CompletableFuture<Image> pending = loading.putIfAbsent(key, created);
+        if (pending != null) {
+            return pending;
+        }
+        loadUncached(id, url, width, key)
+                .whenComplete((image, ex) -> {
+                    loading.remove(key, created);
+                    if (ex != null) {
+                        logger.debug("Image load failed for {}: {}", key, ex.toString());
+                    }
+                    created.complete(ex == null ? image : null);
+                });
+        return created;
+    }
+
+    /**
+     * Indica si la imagen ya está en memoria, sin alterar el orden de expulsión.
+     *
+     * @param id    Id del personaje.
+     * @param url   URL de la imagen.
+     * @param width Ancho de decodificación, o {@link #FULL_SIZE}.
+     * @return true si {@link #load} la devolvería al instante.
+     */
+    public static boolean isCached(String id, String url, int width) {
+        if (url == null || url.isEmpty())
+            return false;
+        String key = key(id, url, width);
+        synchronized (memory) {
+            return memory.containsKey(key);
+        }
+    }
+
+    /**
+     * Elimina de ambos niveles todas las variantes de la imagen de un personaje
+     * (p. ej. tras subir una imagen nueva).
+     *
+     * @param id Id del personaje.
+     */
+    public static void invalidate(String id) {
+        if (id == null)
+            return;
+        removeFromMemory(Collections.singleton(id));
+        deleteFromDisk(id);
+    }
+
+    /**
+     * Elimina todas las variantes de las imágenes de varios personajes (p. ej.
+     * los que han cambiado en el backend). La memoria se limpia al momento y los
+     * ficheros se borran en segundo plano, así que se puede llamar desde el hilo
+     * de JavaFX.
+     *
+     * @param ids Ids de los personajes.
+     */
+    public static void invalidate(Collection<String> ids) {
+        if (ids.isEmpty())
+            return;
+        Set<String> copia = new HashSet<>(ids);
+        removeFromMemory(copia);
+        BackgroundTasks.run(BackgroundTasks.Workload.IMAGE, () -> copia.forEach(ImageCache::deleteFromDisk));
+    }
+
+    // ==========================================
+    // MÉTODOS AUXILIARES PRIVADOS (HELPERS)
+    // ==========================================
+
+    /**
+     * Disco -> (miniatura en bloque | descarga individual) -> decodificación.
+     * Las etapas de disco y decodificación van al pool IMAGE; la espera de la
+     * red no ocupa ninguno de sus hilos.
+     */
+    private static CompletableFuture<Image> loadUncached(String id, String url, int width, String key) {
+        boolean thumbnail = width == THUMBNAIL_WIDTH;
+        return BackgroundTasks.submit(BackgroundTasks.Workload.IMAGE, () -> readFromDisk(id, thumbnail))
+                .thenCompose(data -> data != null ? CompletableFuture.completedFuture(data)
+                        : fetch(id, url, thumbnail))
+                .thenCompose(data -> data == null ? CompletableFuture.completedFuture((Image) null)
+                        : BackgroundTasks.submit(BackgroundTasks.Workload.IMAGE, () -> decode(id, width, key, data)));
+    }
+
+    private static CompletableFuture<byte[]> fetch(String id, String url, boolean thumbnail) {
+        if (thumbnail && isBackendImage(id, url)) {
+            return thumbnails.request(id).thenCompose(data -> {
+                if (data != null) {
+                    writeToDisk(diskFile(id, true), data);
+                    return CompletableFuture.completedFuture(data);
+                }
+                // El servidor aún no la tiene guardada: pedirla sola
+                return downloadAsync(id, url);
+            });
+        }
+        return downloadAsync(id, url);
+    }
+
+    private static CompletableFuture<byte[]> downloadAsync(String id, String url) {
+        return BackgroundTasks.submit(BackgroundTasks.Workload.IMAGE, () -> {
+            byte[] data = download(url);
+            // Solo se guardan en disco las imágenes servidas por el backend
+            if (data != null && isBackendImage(id, url)) {
+                writeToDisk(diskFile(id, false), data);
+            }
+            return data;
+        });
+    }
+
+    private static Image decode(String id, int width, String key, byte[] data) {
+        Image image = new Image(new ByteArrayInputStream(data), width, 0, true, true);
+        if (image.isError()) {
+            logger.debug("Could not decode image {}", key);
+            invalidate(id);
+            return null;
+        }
+        put(key, image);
+        return image;
+    }
+
+    /** Imagen servida por el endpoint de imágenes del backend para ese id. */
+    private static boolean isBackendImage(String id, String url) {
+        return id != null && !id.isEmpty() && url.startsWith("http")
+                && url.endsWith("/characters/" + id + "/image");
+    }
+
+    private static byte[] download(String url) throws IOException {
+        if (url.startsWith("http://") || url.startsWith("https://")) {
+            return HarryPotterAPI.fetchImage(url);
+        }
+        // URLs locales (file:) de imágenes recién subidas
+        try (InputStream in = new URL(url).openStream()) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static Image getIfPresent(String key) {
+        synchronized (memory) {
+            return memory.get(key);
+        }
+    }
+
+    private static void put(String key, Image image) {
+        long size = sizeOf(image);
+        if (size > MEMORY_BUDGET)
+            return;
+        synchronized (memory) {
+            Image previous = memory.put(key, image);
+            if (previous != null) {
+                memoryBytes -= sizeOf(previous);
+            }
+            memoryBytes += size;
+
+            Iterator<Image> it = memory.values().iterator();
+            while (memoryBytes > MEMORY_BUDGET && it.hasNext()) {
+                memoryBytes -= sizeOf(it.next());
+                it.remove();
+            }
+        }
+    }
+
+    private static long sizeOf(Image image) {
+        return (long) image.getWidth() * (long) image.getHeight() * 4L;
+    }
+
+    private static String key(String id, String url, int width) {
+        String base = (id != null && !id.isEmpty()) ? id : Integer.toHexString(url.hashCode());
+        return base + "@" + width;
+    }
+
+    private static void removeFromMemory(Set<String> ids) {
+        synchronized (memory) {
+            Iterator<Map.Entry<String, Image>> it = memory.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Image> entry = it.next();
+                String key = entry.getKey();
+                if (ids.contains(key.substring(0, key.lastIndexOf('@')))) {
+                    memoryBytes -= sizeOf(entry.getValue());
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private static Path diskFile(String id, boolean thumbnail) {
+        if (diskDir == null || id == null || id.isEmpty())
+            return null;
+        return diskDir.resolve(LocalStorage.safeFileName(id) + (thumbnail ? ".thumb.img" : ".img"));
+    }
+
+    /**
+     * Bytes guardados en disco. Para una miniatura sirve también la imagen
+     * original (se reduce al decodificar).
+     */
+    private static byte[] readFromDisk(String id, boolean thumbnail) {
+        byte[] data = thumbnail ? readFile(diskFile(id, true)) : null;
+        return data != null ? data : readFile(diskFile(id, false));
+    }
+
+    private static byte[] readFile(Path file) {
+        if (file == null || !Files.isRegularFile(file))
+            return null;
+        try {
+            byte[] data = Files.readAllBytes(file);
+            // La fecha de modificación hace de "último uso" para la expulsión LRU
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return data;
+        } catch (IOException e) {
+            logger.debug("Could not read cached image {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    private static void writeToDisk(Path file, byte[] data) {
+        if (file == null)
+            return;
+        try {
+            long previous = Files.isRegularFile(file) ? Files.size(file) : 0;
+            Path tmp = Files.createTempFile(diskDir, "img", ".tmp");
+            Files.write(tmp, data);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            addDiskBytes(data.length - previous);
+        } catch (IOException e) {
+            logger.debug("Could not write cached image {}: {}", file, e.getMessage());
+        }
+    }
+
+    private static void deleteFromDisk(String id) {
+        for (Path file : new Path[] { diskFile(id, false), diskFile(id, true) }) {
+            if (file == null)
+                continue;
+            try {
+                long size = Files.isRegularFile(file) ? Files.size(file) : 0;
+                if (Files.deleteIfExists(file)) {
+                    addDiskBytes(-size);
+                }
+            } catch (IOException e) {
+                logger.warn("Could not delete cached image {}: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    /** Actualiza el tamaño del directorio y expulsa lo menos usado si se pasa. */
+    private static void addDiskBytes(long delta) {
+        synchronized (diskLock) {
+            if (diskBytes < 0) {
+                diskBytes = 0;
+                for (Path file : listDisk()) {
+                    diskBytes += file.toFile().length();
+                }
+            } else {
+                diskBytes += delta;
+            }
+            if (diskBytes > DISK_BUDGET) {
+                evictDisk();
+            }
+        }
+    }
+
+    /**
+     * Borra las imágenes usadas hace más tiempo hasta dejar el directorio al 90%
+     * del límite (se llama con diskLock tomado).
+     */
+    private static void evictDisk() {
+        List<Path> files = listDisk();
+        Map<Path, Long> lastUse = new HashMap<>();
+        long total = 0;
+        for (Path file : files) {
+            lastUse.put(file, file.toFile().lastModified());
+            total += file.toFile().length();
+        }
+        files.sort(Comparator.comparing(lastUse::get));
+        long target = DISK_BUDGET / 10 * 9;
+        int evicted = 0;
+        for (Path file : files) {
+            if (total <= target)
+                break;
+            long size = file.toFile().length();
+            try {
+                Files.deleteIfExists(file);
+                total -= size;
+                evicted++;
+            } catch (IOException e) {
+                logger.debug("Could not evict cached image {}: {}", file, e.getMessage());
+            }
+        }
+        diskBytes = total;
+        logger.debug("Evicted {} cached images ({} bytes left)", evicted, total);
+    }
+
+    private static List<Path> listDisk() {
+        List<Path> files = new ArrayList<>();
+        if (diskDir == null)
+            return files;
+        try (DirectoryStream<Path> dir = Files.newDirectoryStream(diskDir, "*.img")) {
+            dir.forEach(files::add);
+        } catch (IOException e) {
+            logger.debug("Could not list image cache {}: {}", diskDir, e.getMessage());
+        }
+        return files;
+    }
+}
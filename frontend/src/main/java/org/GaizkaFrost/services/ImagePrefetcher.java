@@ -0,0 +1,97 @@
+package org.GaizkaFrost.services;
+
+import org.GaizkaFrost.models.Personaje;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Precarga en segundo plano las imágenes de personajes que probablemente se
+ * mostrarán enseguida (las filas contiguas a las visibles), para que al
+ * desplazarse aparezcan ya en la caché.
+ *
+ * <p>
+ * Tiene baja prioridad: nunca hay más de {@code maxConcurrent} precargas en
+ * marcha, de modo que las imágenes visibles solo esperan, como mucho, a esas.
+ * Cada llamada a {@link #prefetch(List)} sustituye la cola anterior, y
+ * {@link #cancel()} la vacía (p. ej. al cambiar el filtro). Las cargas ya
+ * iniciadas terminan igualmente, porque pueden estar compartidas con una
+ * tarjeta visible.
+ * </p>
+ *
+ * @author Gaizka
+ * @author Xiker
+ * @author Diego
+ */
+public final class ImagePrefetcher {
+
+    private final int width;
+    private final int maxConcurrent;
+
+    private final Deque<Personaje> pendientes = new ArrayDeque<>();
+    private int enCurso = 0;
+
+    /**
+     * @param width         Ancho de las imágenes a precargar (el mismo con el que
+     *                      se mostrarán).
+     * @param maxConcurrent Máximo de precargas simultáneas.
+     */
+    public ImagePrefetcher(int width, int maxConcurrent) {
+        this.width = width;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+    }
+
+    /**
+     * Sustituye la cola de precarga por los personajes indicados, en ese orden de
+     * prioridad. Los que no tienen imagen o ya la tienen en memoria se omiten.
+     *
+     * @param personajes Personajes cuyas imágenes se van a precargar.
+     */
+    public void prefetch(List<Personaje> personajes) {
+        synchronized (this) {
+            pendientes.clear();
+            for (Personaje p : personajes) {
+                String url = p.getImagenUrl();
+                if (url != null && !url.isEmpty() && !ImageCache.isCached(p.getApiId(), url, width)) {
+                    pendientes.add(p);
+                }
+            }
+        }
+        lanzar();
+    }
+
+    /**
+     * Descarta las precargas pendientes.
+     */
+    public synchronized void cancel() {
+        pendientes.clear();
+    }
+
+    // ==========================================
+    // MÉTODOS AUXILIARES PRIVADOS (HELPERS)
+    // ==========================================
+
+    private void lanzar() {
+        while (true) {
+            Personaje p;
+            synchronized (this) {
+                if (enCurso >= maxConcurrent || pendientes.isEmpty()) {
+                    return;
+                }
+                p = pendientes.poll();
+                // Puede haberse cargado mientras esperaba en la cola
+                if (ImageCache.isCached(p.getApiId(), p.getImagenUrl(), width)) {
+                    continue;
+                }
+                enCurso++;
+            }
+            ImageCache.load(p.getApiId(), p.getImagenUrl(), width).whenComplete((image, ex) -> {
+                synchronized (this) {
+                    enCurso--;
+                }
+                lanzar();
+            });
+        }
+    }
+}
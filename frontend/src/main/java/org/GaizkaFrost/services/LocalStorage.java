@@ -0,0 +1,60 @@
+package org.GaizkaFrost.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Ubicación de los datos locales del usuario (cachés, instantáneas...).
+ * Por defecto {@code ~/.anuario_magico}; se puede cambiar con
+ * {@code -Danuario.dataDir=<ruta>}.
+ *
+ * @author Gaizka
+ * @author Xiker
+ * @author Diego
+ */
+public final class LocalStorage {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalStorage.class);
+
+    private static final Path DATA_DIR = Paths.get(System.getProperty("anuario.dataDir",
+            Paths.get(System.getProperty("user.home"), ".anuario_magico").toString()));
+
+    private LocalStorage() {
+    }
+
+    /**
+     * Devuelve el directorio de datos del usuario.
+     */
+    public static Path getDataDir() {
+        return DATA_DIR;
+    }
+
+    /**
+     * Devuelve un subdirectorio del directorio de datos, creándolo si no existe.
+     *
+     * @param name Nombre del subdirectorio (p. ej. "images").
+     * @return La ruta del subdirectorio, o null si no se pudo crear.
+     */
+    public static Path getDirectory(String name) {
+        Path dir = DATA_DIR.resolve(name);
+        try {
+            Files.createDirectories(dir);
+            return dir;
+        } catch (IOException e) {
+            logger.warn("Cannot create local data directory {}: {}", dir, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Convierte un identificador en un nombre de fichero seguro.
+     */
+    public static String safeFileName(String id) {
+        return id.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+}
@@ -0,0 +1,535 @@
+package org.GaizkaFrost.services;
+
+import org.GaizkaFrost.models.Personaje;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Cola de escritura diferida (write-behind) de los cambios de personajes:
+ * ediciones, borrados y favoritos.
+ *
+ * <p>
+ * Quien hace el cambio lo aplica en su copia local al momento y lo encola aquí;
+ * la cola lo guarda en un diario en disco ({@code <dataDir>/outbox}) y lo envía
+ * en segundo plano, junto con los demás pendientes, en una sola petición a
+ * {@code POST /characters/batch}. Los cambios de un mismo personaje se agrupan
+ * (una edición acumula los campos de las anteriores y el borrado sustituye a
+ * todo lo demás). Si el backend no responde (error de red o 503) se reintenta
+ * con espera creciente; como el diario sobrevive a un reinicio, lo pendiente se
+ * envía en el siguiente arranque. Cualquier otro error HTTP rechaza el lote
+ * entero: repetirlo no serviría de nada.
+ * </p>
+ *
+ * <p>
+ * Mientras un cambio no se ha confirmado, los personajes que se descargan del
+ * backend lo llevan ya aplicado ({@link #superponer(Consumer)}), para que al
+ * recargar la lista no reaparezca el valor anterior. Los cambios que el backend
+ * rechaza (personaje inexistente, datos no válidos, lote rechazado...) se
+ * descartan y se avisan a {@link #setOnRejected(BiConsumer)}.
+ * </p>
+ *
+ * <p>
+ * Las altas no pasan por aquí: necesitan el id que asigna el servidor.
+ * </p>
+ *
+ * @author Gaizka
+ * @author Xiker
+ * @author Diego
+ */
+public final class MutationOutbox {
+
+    private static final Logger logger = LoggerFactory.getLogger(MutationOutbox.class);
+
+    private static final long FLUSH_DELAY_MS = Long.getLong("anuario.outbox.flushDelayMs", 300);
+    private static final long MAX_RETRY_DELAY_MS = 60_000;
+    private static final int MAX_BATCH = 200;
+
+    private static final Path JOURNAL_DIR = LocalStorage.getDirectory("outbox");
+    private static final Path JOURNAL = JOURNAL_DIR == null ? null : JOURNAL_DIR.resolve("mutations.json");
+
+    /** Cambios pendientes de un personaje, ya agrupados. */
+    private static final class Pendiente {
+        JsonObject datos; // Campos editados, o null
+        Boolean favorito; // Nuevo estado de favorito, o null
+        boolean borrado;
+        long version; // Aumenta con cada cambio: indica si cambió mientras se enviaba
+    }
+
+    // Los envíos van a un hilo propio: las esperas (debounce y reintentos) no
+    // ocupan ningún hilo del pool NETWORK
+    private static final ScheduledExecutorService envios = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "mutation-outbox");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static final Object lock = new Object();
+    private static final Map<String, Pendiente> pendientes = new LinkedHashMap<>();
+    // Hay un envío programado o en curso
+    private static boolean programado = false;
+    // Hay un envío en curso (siguiente apunta a él y ya no se puede adelantar)
+    private static boolean enviando = false;
+    private static ScheduledFuture<?> siguiente;
+    // Cadena de envíos vigente: un envío de una cadena anterior (adelantada por
+    // flush cuando ya había arrancado) no hace nada
+    private static long turno = 0;
+    // El diario no refleja lo pendiente; ya hay una escritura en cola
+    private static boolean diarioSucio = false;
+    // Hay quien espera a que se vacíe la cola (flush): sin debounce
+    private static boolean urgente = false;
+    private static final List<CompletableFuture<Void>> esperas = new ArrayList<>();
+    // Espera antes del siguiente envío; solo se usa en el hilo de envíos
+    private static long espera = FLUSH_DELAY_MS;
+    private static volatile BiConsumer<String, String> onRejected;
+
+    static {
+        cargarDiario();
+        synchronized (lock) {
+            if (!pendientes.isEmpty()) {
+                logger.info("{} pending character changes from a previous session", pendientes.size());
+                programarEnvio();
+            }
+        }
+    }
+
+    private MutationOutbox() {
+    }
+
+    // ==========================================
+    // API PÚBLICA
+    // ==========================================
+
+    /**
+     * Encola la edición de un personaje.
+     *
+     * @param id    Id del personaje.
+     * @param datos Campos modificados (mismo formato que {@code PUT /characters/<id>}).
+     */
+    public static void edit(String id, JsonObject datos) {
+        encolar(id, p -> {
+            if (p.datos == null) {
+                p.datos = new JsonObject();
+            }
+            for (Map.Entry<String, JsonElement> campo : datos.entrySet()) {
+                p.datos.add(campo.getKey(), campo.getValue().deepCopy());
+            }
+        });
+    }
+
+    /**
+     * Encola el borrado de un personaje; sustituye a sus demás cambios pendientes.
+     *
+     * @param id Id del personaje.
+     */
+    public static void delete(String id) {
+        encolar(id, p -> {
+            p.borrado = true;
+            p.datos = null;
+            p.favorito = null;
+        });
+    }
+
+    /**
+     * Encola el cambio de favorito de un personaje.
+     *
+     * @param id       Id del personaje.
+     * @param favorito Nuevo estado.
+     */
+    public static void setFavorite(String id, boolean favorito) {
+        encolar(id, p -> p.favorito = favorito);
+    }
+
+    /**
+     * Tras cambiar favoritos por otra vía ({@link HarryPotterAPI#setFavorites}),
+     * iguala los cambios de favorito aún pendientes de esos personajes para que
+     * al enviarse no deshagan el cambio más reciente.
+     *
+     * @param ids      Ids de los personajes.
+     * @param favorito Estado aplicado.
+     */
+    public static void actualizarFavoritos(Collection<String> ids, boolean favorito) {
+        synchronized (lock) {
+            boolean cambiado = false;
+            for (String id : ids) {
+                Pendiente p = pendientes.get(id);
+                if (p != null && p.favorito != null && p.favorito != favorito) {
+                    p.favorito = favorito;
+                    p.version++;
+                    cambiado = true;
+                }
+            }
+            if (cambiado) {
+                marcarDiario();
+            }
+        }
+    }
+
+    /**
+     * Número de personajes con cambios sin confirmar.
+     */
+    public static int size() {
+        synchronized (lock) {
+            return pendientes.size();
+        }
+    }
+
+    /**
+     * Envía cuanto antes lo pendiente (sin esperar al debounce ni al siguiente
+     * reintento), p. ej. antes de cerrar la aplicación.
+     *
+     * @return Futuro que se completa cuando la cola queda vacía. Si el backend no
+     *         responde no se completa nunca: el llamador debe acotar la espera.
+     */
+    public static CompletableFuture<Void> flush() {
+        synchronized (lock) {
+            if (pendientes.isEmpty()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<Void> vacia = new CompletableFuture<>();
+            esperas.add(vacia);
+            urgente = true;
+            if (!programado) {
+                programarEnvio();
+            } else if (!enviando) {
+                // Estaba esperando (debounce o reintento): se adelanta. Si hay un
+                // envío en curso, al terminar programa el siguiente sin espera
+                siguiente.cancel(false);
+                turno++;
+                siguiente = programar(0);
+            }
+            return vacia;
+        }
+    }
+
+    /**
+     * Oyente de los cambios rechazados por el backend (id y motivo). Se llama
+     * desde un hilo en segundo plano.
+     */
+    public static void setOnRejected(BiConsumer<String, String> listener) {
+        onRejected = listener;
+    }
+
+    /**
+     * Envuelve un consumidor de personajes descargados para que reciba cada uno
+     * con los cambios pendientes ya aplicados; los borrados pendientes no le
+     * llegan.
+     *
+     * @param consumidor Consumidor original.
+     * @return El consumidor envuelto (el mismo si no hay nada pendiente).
+     */
+    public static Consumer<Personaje> superponer(Consumer<Personaje> consumidor) {
+        synchronized (lock) {
+            if (pendientes.isEmpty()) {
+                return consumidor;
+            }
+        }
+        return p -> {
+            if (aplicarPendientes(p)) {
+                consumidor.accept(p);
+            }
+        };
+    }
+
+    /**
+     * Aplica a un personaje descargado sus cambios pendientes.
+     *
+     * @param p Personaje recién descargado.
+     * @return false si su borrado está pendiente (no se debe mostrar).
+     */
+    public static boolean aplicarPendientes(Personaje p) {
+        JsonObject datos;
+        Boolean favorito;
+        synchronized (lock) {
+            Pendiente pendiente = pendientes.get(p.getApiId());
+            if (pendiente == null) {
+                return true;
+            }
+            if (pendiente.borrado) {
+                return false;
+            }
+            datos = pendiente.datos;
+            favorito = pendiente.favorito;
+        }
+        if (datos != null) {
+            p.actualizarDesdeJson(datos);
+        }
+        if (favorito != null) {
+            p.setFavorite(favorito);
+        }
+        return true;
+    }
+
+    // ==========================================
+    // MÉTODOS AUXILIARES PRIVADOS (HELPERS)
+    // ==========================================
+
+    private static void encolar(String id, Consumer<Pendiente> cambio) {
+        if (id == null || id.isEmpty()) {
+            return;
+        }
+        synchronized (lock) {
+            Pendiente p = pendientes.computeIfAbsent(id, k -> new Pendiente());
+            if (p.borrado) {
+                return; // Nada que cambiar en un personaje ya borrado
+            }
+            cambio.accept(p);
+            p.version++;
+            marcarDiario();
+            programarEnvio();
+        }
+    }
+
+    /** Programa el siguiente envío si no lo hay ya (se llama con el lock tomado). */
+    private static void programarEnvio() {
+        if (programado) {
+            return;
+        }
+        programado = true;
+        siguiente = programar(urgente ? 0 : FLUSH_DELAY_MS);
+    }
+
+    /** Programa un envío de la cadena vigente (se llama con el lock tomado). */
+    private static ScheduledFuture<?> programar(long retardo) {
+        long miTurno = turno;
+        return envios.schedule(() -> enviarLote(miTurno), retardo, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Envía un lote de lo pendiente y programa el siguiente, si queda algo, o un
+     * reintento si el backend no responde. Solo se ejecuta en el hilo de envíos.
+     */
+    private static void enviarLote(long miTurno) {
+        Map<String, Long> versiones = new LinkedHashMap<>();
+        JsonArray lote = new JsonArray();
+        synchronized (lock) {
+            if (miTurno != turno) {
+                return;
+            }
+            enviando = true;
+            for (Map.Entry<String, Pendiente> entry : pendientes.entrySet()) {
+                if (versiones.size() >= MAX_BATCH) {
+                    break;
+                }
+                versiones.put(entry.getKey(), entry.getValue().version);
+                agregarMutaciones(lote, entry.getKey(), entry.getValue());
+            }
+            if (lote.size() == 0) {
+                terminar().forEach(vacia -> vacia.complete(null));
+                return;
+            }
+        }
+
+        JsonArray resultados = null;
+        String rechazoLote = null;
+        try {
+            resultados = HarryPotterAPI.applyMutations(lote);
+        } catch (HarryPotterAPI.HttpStatusException e) {
+            if (e.getStatusCode() != 503) {
+                rechazoLote = "http_" + e.getStatusCode();
+            } else {
+                reintentar(versiones.size(), e);
+                return;
+            }
+        } catch (IOException e) {
+            // Backend caído o reiniciándose
+            reintentar(versiones.size(), e);
+            return;
+        } catch (RuntimeException e) {
+            // Respuesta mal formada
+            logger.error("Invalid response to character changes batch: {}", e.getMessage());
+            rechazoLote = "invalid_response";
+        }
+        espera = FLUSH_DELAY_MS;
+
+        List<String[]> rechazados = new ArrayList<>();
+        if (rechazoLote != null) {
+            // El backend no aplicó nada del lote: se descarta entero
+            logger.error("Character changes batch rejected by backend ({}); dropping {} changes", rechazoLote,
+                    versiones.size());
+            for (String id : versiones.keySet()) {
+                rechazados.add(new String[] { id, rechazoLote });
+            }
+        } else {
+            for (JsonElement e : resultados) {
+                JsonObject resultado = e.getAsJsonObject();
+                String estado = resultado.get("status").getAsString();
+                if (!"ok".equals(estado)) {
+                    rechazados.add(new String[] { resultado.get("id").getAsString(), estado });
+                }
+            }
+        }
+        List<CompletableFuture<Void>> vaciada = Collections.emptyList();
+        synchronized (lock) {
+            // Se quitan los enviados que no han vuelto a cambiar mientras tanto
+            for (Map.Entry<String, Long> enviado : versiones.entrySet()) {
+                Pendiente p = pendientes.get(enviado.getKey());
+                if (p != null && p.version == enviado.getValue()) {
+                    pendientes.remove(enviado.getKey());
+                }
+            }
+            marcarDiario();
+            if (pendientes.isEmpty()) {
+                vaciada = terminar();
+            } else {
+                // Si el lote iba lleno no hace falta esperar más cambios
+                programarSiguiente(urgente || versiones.size() >= MAX_BATCH ? 0 : FLUSH_DELAY_MS);
+            }
+        }
+        for (String[] rechazo : rechazados) {
+            logger.warn("Character change rejected by backend: {} ({})", rechazo[0], rechazo[1]);
+            BiConsumer<String, String> listener = onRejected;
+            if (listener != null) {
+                listener.accept(rechazo[0], rechazo[1]);
+            }
+        }
+        // Después de avisar de los rechazos, para que quien espera ya los tenga
+        vaciada.forEach(vacia -> vacia.complete(null));
+    }
+
+    /** Reprograma el envío con espera creciente (en el hilo de envíos). */
+    private static void reintentar(int cambios, IOException e) {
+        espera = Math.min(MAX_RETRY_DELAY_MS, Math.max(1000, espera * 2));
+        logger.warn("Could not send {} character changes, retrying in {} ms: {}", cambios, espera,
+                e.getMessage());
+        synchronized (lock) {
+            programarSiguiente(espera);
+        }
+    }
+
+    /** Programa el siguiente envío al terminar uno (se llama con el lock tomado). */
+    private static void programarSiguiente(long retardo) {
+        enviando = false;
+        siguiente = programar(retardo);
+    }
+
+    /**
+     * La cola ha quedado vacía (se llama con el lock tomado).
+     *
+     * @return Esperas de {@link #flush()} a completar, ya fuera del lock.
+     */
+    private static List<CompletableFuture<Void>> terminar() {
+        programado = false;
+        enviando = false;
+        urgente = false;
+        siguiente = null;
+        List<CompletableFuture<Void>> vaciada = new ArrayList<>(esperas);
+        esperas.clear();
+        return vaciada;
+    }
+
+    /** Convierte los cambios agrupados de un personaje en mutaciones del lote. */
+    private static void agregarMutaciones(JsonArray lote, String id, Pendiente p) {
+        if (p.borrado) {
+            lote.add(mutacion("delete", id));
+            return;
+        }
+        if (p.datos != null) {
+            JsonObject m = mutacion("edit", id);
+            m.add("data", p.datos.deepCopy());
+            lote.add(m);
+        }
+        if (p.favorito != null) {
+            JsonObject m = mutacion("favorite", id);
+            m.addProperty("is_favorite", p.favorito);
+            lote.add(m);
+        }
+    }
+
+    private static JsonObject mutacion(String op, String id) {
+        JsonObject m = new JsonObject();
+        m.addProperty("op", op);
+        m.addProperty("id", id);
+        return m;
+    }
+
+    /**
+     * Pide reescribir el diario (se llama con el lock tomado). La escritura va al
+     * hilo de envíos, fuera del lock y del hilo de quien hizo el cambio; los
+     * cambios que llegan mientras tanto se guardan en la misma escritura.
+     */
+    private static void marcarDiario() {
+        if (JOURNAL == null || diarioSucio) {
+            return;
+        }
+        diarioSucio = true;
+        envios.execute(MutationOutbox::guardarDiario);
+    }
+
+    /** Reescribe el diario con lo pendiente (en el hilo de envíos). */
+    private static void guardarDiario() {
+        String diario;
+        synchronized (lock) {
+            diarioSucio = false;
+            JsonArray mutaciones = new JsonArray();
+            for (Map.Entry<String, Pendiente> entry : pendientes.entrySet()) {
+                agregarMutaciones(mutaciones, entry.getKey(), entry.getValue());
+            }
+            // Se serializa aquí: los datos de una edición pueden cambiar después
+            diario = mutaciones.toString();
+        }
+        try {
+            Path tmp = Files.createTempFile(JOURNAL_DIR, "mutations", ".tmp");
+            Files.write(tmp, diario.getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, JOURNAL, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.error("Could not write outbox journal {}: {}", JOURNAL, e.getMessage());
+        }
+    }
+
+    private static void cargarDiario() {
+        if (JOURNAL == null || !Files.isRegularFile(JOURNAL)) {
+            return;
+        }
+        try {
+            String contenido = new String(Files.readAllBytes(JOURNAL), StandardCharsets.UTF_8);
+            Iterator<JsonElement> it = JsonParser.parseString(contenido).getAsJsonArray().iterator();
+            synchronized (lock) {
+                while (it.hasNext()) {
+                    JsonObject m = it.next().getAsJsonObject();
+                    Pendiente p = pendientes.computeIfAbsent(m.get("id").getAsString(), k -> new Pendiente());
+                    switch (m.get("op").getAsString()) {
+                        case "delete":
+                            p.borrado = true;
+                            break;
+                        case "edit":
+                            p.datos = m.getAsJsonObject("data");
+                            break;
+                        case "favorite":
+                            p.favorito = m.get("is_favorite").getAsBoolean();
+                            break;
+                        default:
+                            break;
+                    }
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Could not read outbox journal {}: {}", JOURNAL, e.getMessage());
+        }
+    }
+}
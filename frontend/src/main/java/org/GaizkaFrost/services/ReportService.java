@@ -26,7 +26,8 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Servicio encargado de la generación de informes PDF utilizando JasperReports.
- * Maneja la compilación y rellenado de plantillas .jrxml en un hilo secundario.
+ * Maneja la compilación y rellenado de plantillas .jrxml en el pool de informes
+ * de {@link BackgroundTasks}.
  *
  * @author Diego
  * @author Gaizka
@@ -82,8 +83,8 @@ public class ReportService {
         loadingAlert.initOwner(owner);
         loadingAlert.show(); // Non-blocking show
 
-        // 2. Background Processing
-        new Thread(() -> {
+        // 2. Background Processing (pool de informes, uno a la vez)
+        BackgroundTasks.run(BackgroundTasks.Workload.REPORT, () -> {
             try {
                 // Notify start (Optional, but good for logs)
                 logger.info("Starting PDF generation for {}...", file.getName());
@@ -151,7 +152,13 @@ public class ReportService {
                     showAlert(Alert.AlertType.ERROR, "Error", "Unexpected error: " + e.getMessage());
                 });
             }
-        }).start();
+        }).whenComplete((ignored, ex) -> {
+            // Solo ocurre si la cola de informes está llena o la aplicación se cierra
+            if (ex != null) {
+                logger.warn("Report generation not started: {}", ex.toString());
+                javafx.application.Platform.runLater(loadingAlert::close);
+            }
+        });
     }
 
     private static void showAlert(Alert.AlertType type, String title, String content) {
@@ -0,0 +1,364 @@
+package org.GaizkaFrost.services;
+
+import org.GaizkaFrost.models.Personaje;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.regex.Pattern;
+
+/**
+ * Índice de búsqueda sobre una lista de personajes, construido una vez por cada
+ * carga de datos.
+ * Guarda los campos ya normalizados (minúsculas y sin tildes), conjuntos de bits
+ * por casa y por estado, y un índice de trigramas para buscar subcadenas en el
+ * nombre y el patronus. Filtrar consiste en consultar el índice e intersectar
+ * conjuntos de bits, sin crear cadenas por cada registro.
+ *
+ * <p>
+ * El índice es inmutable y puede consultarse desde cualquier hilo. El estado de
+ * favorito no se indexa porque cambia sin recargar la lista; se consulta
+ * directamente en cada personaje.
+ * </p>
+ *
+ * @author Gaizka
+ * @author Xiker
+ * @author Diego
+ */
+public final class SearchIndex {
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final int[] EMPTY = new int[0];
+    // Cada cuántos registros se comprueba si el filtrado se ha cancelado
+    private static final int CANCEL_CHECK_INTERVAL = 1024;
+
+    private final Personaje[] items;
+    private final String[] names;
+    private final String[] patronuses;
+
+    private final Map<Long, int[]> nameTrigrams;
+    private final Map<Long, int[]> patronusTrigrams;
+
+    // Casa normalizada -> personajes con esa casa
+    private final Map<String, BitSet> houses = new LinkedHashMap<>();
+    private final BitSet noHouse = new BitSet();
+    // Estado en minúsculas -> personajes con ese estado
+    private final Map<String, BitSet> statuses = new HashMap<>();
+    private final BitSet unknownStatus = new BitSet();
+
+    /**
+     * Construye el índice. La lista se copia: los cambios posteriores en ella no
+     * se reflejan y requieren un índice nuevo.
+     *
+     * @param personajes Personajes a indexar, en el orden en que se mostrarán.
+     */
+    public SearchIndex(List<Personaje> personajes) {
+        int n = personajes.size();
+        items = personajes.toArray(new Personaje[0]);
+        names = new String[n];
+        patronuses = new String[n];
+
+        for (int i = 0; i < n; i++) {
+            Personaje p = items[i];
+            names[i] = normalize(p.getNombre());
+            patronuses[i] = normalize(p.getPatronus());
+
+            String casa = p.getCasa();
+            if (casa == null || casa.trim().isEmpty()) {
+                noHouse.set(i);
+            } else {
+                houses.computeIfAbsent(normalize(casa), k -> new BitSet(n)).set(i);
+            }
+
+            String estado = p.getEstado();
+            if (estado == null || estado.trim().isEmpty()) {
+                unknownStatus.set(i);
+            } else {
+                String key = estado.toLowerCase(Locale.ROOT);
+                statuses.computeIfAbsent(key, k -> new BitSet(n)).set(i);
+                if (key.equals("unknown") || key.equals("desconocido")) {
+                    unknownStatus.set(i);
+                }
+            }
+        }
+
+        nameTrigrams = buildTrigrams(names);
+        patronusTrigrams = buildTrigrams(patronuses);
+    }
+
+    /**
+     * Número de personajes indexados.
+     */
+    public int size() {
+        return items.length;
+    }
+
+    /**
+     * Devuelve los personajes que cumplen la consulta, en el orden original.
+     * Si el hilo se interrumpe (filtrado obsoleto), se abandona el cálculo.
+     *
+     * @param query Criterios de filtrado.
+     * @return Lista nueva con los personajes que coinciden.
+     * @throws CancellationException Si el hilo fue interrumpido.
+     */
+    public List<Personaje> filter(Query query) {
+        BitSet result = new BitSet(items.length);
+        result.set(0, items.length);
+
+        // Primero los filtros baratos (conjuntos precalculados)
+        switch (query.houseMode) {
+            case NONE:
+                result.and(noHouse);
+                break;
+            case UNKNOWN:
+                result.and(housesContaining("unknown", "desconocido"));
+                break;
+            case CONTAINS:
+                result.and(housesContaining(normalize(query.house)));
+                break;
+            default:
+                break;
+        }
+        switch (query.statusMode) {
+            case UNKNOWN:
+                result.and(unknownStatus);
+                break;
+            case EQUALS:
+                result.and(statuses.getOrDefault(query.status.toLowerCase(Locale.ROOT), new BitSet()));
+                break;
+            default:
+                break;
+        }
+
+        // Después las búsquedas de texto, solo sobre los candidatos restantes
+        matchText(result, normalize(query.name), names, nameTrigrams);
+        matchText(result, normalize(query.patronus), patronuses, patronusTrigrams);
+
+        List<Personaje> filtrados = new ArrayList<>(result.cardinality());
+        int checked = 0;
+        for (int i = result.nextSetBit(0); i >= 0; i = result.nextSetBit(i + 1)) {
+            checkCancelled(++checked);
+            if (!query.favoritesOnly || items[i].isFavorite()) {
+                filtrados.add(items[i]);
+            }
+        }
+        return filtrados;
+    }
+
+    /**
+     * Convierte un texto a su forma de búsqueda: sin espacios en los extremos, en
+     * minúsculas y sin tildes ni diacríticos.
+     */
+    public static String normalize(String s) {
+        if (s == null || s.isEmpty()) {
+            return "";
+        }
+        String lower = s.trim().toLowerCase(Locale.ROOT);
+        // Atajo: solo ASCII, no hay nada que descomponer
+        boolean ascii = true;
+        for (int i = 0; i < lower.length() && ascii; i++) {
+            ascii = lower.charAt(i) < 0x80;
+        }
+        if (ascii) {
+            return lower;
+        }
+        return DIACRITICS.matcher(Normalizer.normalize(lower, Normalizer.Form.NFD)).replaceAll("");
+    }
+
+    // ==========================================
+    // MÉTODOS AUXILIARES PRIVADOS (HELPERS)
+    // ==========================================
+
+    private BitSet housesContaining(String... fragments) {
+        BitSet union = new BitSet(items.length);
+        for (Map.Entry<String, BitSet> entry : houses.entrySet()) {
+            for (String fragment : fragments) {
+                if (entry.getKey().contains(fragment)) {
+                    union.or(entry.getValue());
+                    break;
+                }
+            }
+        }
+        return union;
+    }
+
+    /**
+     * Deja en {@code result} solo los personajes cuyo campo contiene {@code text}.
+     * Con tres o más caracteres se usan los trigramas para descartar candidatos
+     * antes de comprobar la subcadena.
+     */
+    private static void matchText(BitSet result, String text, String[] values, Map<Long, int[]> trigrams) {
+        if (text.isEmpty() || result.isEmpty()) {
+            return;
+        }
+        if (text.length() >= 3) {
+            int[] candidates = null;
+            for (int i = 0; i + 3 <= text.length(); i++) {
+                int[] postings = trigrams.getOrDefault(trigram(text, i), EMPTY);
+                candidates = candidates == null ? postings : intersect(candidates, postings);
+                if (candidates.length == 0) {
+                    result.clear();
+                    return;
+                }
+            }
+            BitSet allowed = new BitSet(values.length);
+            for (int idx : candidates) {
+                allowed.set(idx);
+            }
+            result.and(allowed);
+        }
+        // Los trigramas no garantizan el orden: verificar la subcadena
+        int checked = 0;
+        for (int i = result.nextSetBit(0); i >= 0; i = result.nextSetBit(i + 1)) {
+            checkCancelled(++checked);
+            if (!values[i].contains(text)) {
+                result.clear(i);
+            }
+        }
+    }
+
+    private static void checkCancelled(int checked) {
+        if (checked % CANCEL_CHECK_INTERVAL == 0 && Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Search cancelled");
+        }
+    }
+
+    private static Map<Long, int[]> buildTrigrams(String[] values) {
+        Map<Long, int[]> postings = new HashMap<>();
+        Map<Long, Integer> sizes = new HashMap<>();
+        for (int doc = 0; doc < values.length; doc++) {
+            String v = values[doc];
+            for (int i = 0; i + 3 <= v.length(); i++) {
+                long key = trigram(v, i);
+                int[] list = postings.get(key);
+                int size = sizes.getOrDefault(key, 0);
+                // Cada documento se añade una sola vez aunque repita el trigrama
+                if (list != null && size > 0 && list[size - 1] == doc) {
+                    continue;
+                }
+                if (list == null) {
+                    list = new int[4];
+                } else if (size == list.length) {
+                    list = Arrays.copyOf(list, size * 2);
+                }
+                list[size] = doc;
+                postings.put(key, list);
+                sizes.put(key, size + 1);
+            }
+        }
+        // Recortar las listas a su tamaño real
+        for (Map.Entry<Long, int[]> entry : postings.entrySet()) {
+            entry.setValue(Arrays.copyOf(entry.getValue(), sizes.get(entry.getKey())));
+        }
+        return postings;
+    }
+
+    private static long trigram(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+
+    /** Intersección de dos listas ordenadas de índices. */
+    private static int[] intersect(int[] a, int[] b) {
+        int[] out = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, k = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                out[k++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return k == out.length ? out : Arrays.copyOf(out, k);
+    }
+
+    /**
+     * Criterios de filtrado. Por defecto no filtra nada.
+     */
+    public static final class Query {
+
+        private enum HouseMode {
+            ANY, NONE, UNKNOWN, CONTAINS
+        }
+
+        private enum StatusMode {
+            ANY, UNKNOWN, EQUALS
+        }
+
+        private String name = "";
+        private String patronus = "";
+        private HouseMode houseMode = HouseMode.ANY;
+        private String house;
+        private StatusMode statusMode = StatusMode.ANY;
+        private String status;
+        private boolean favoritesOnly = false;
+
+        /** El nombre contiene el texto. */
+        public Query name(String text) {
+            this.name = text != null ? text : "";
+            return this;
+        }
+
+        /** El patronus contiene el texto. */
+        public Query patronus(String text) {
+            this.patronus = text != null ? text : "";
+            return this;
+        }
+
+        /** La casa contiene el texto (null o vacío: cualquier casa). */
+        public Query house(String house) {
+            if (house == null || house.isEmpty()) {
+                this.houseMode = HouseMode.ANY;
+            } else {
+                this.houseMode = HouseMode.CONTAINS;
+                this.house = house;
+            }
+            return this;
+        }
+
+        /** Sin casa asignada. */
+        public Query noHouse() {
+            this.houseMode = HouseMode.NONE;
+            return this;
+        }
+
+        /** Casa explícitamente desconocida ("unknown" / "desconocido"). */
+        public Query unknownHouse() {
+            this.houseMode = HouseMode.UNKNOWN;
+            return this;
+        }
+
+        /** Estado igual al indicado, sin distinguir mayúsculas. */
+        public Query status(String status) {
+            if (status == null || status.isEmpty()) {
+                this.statusMode = StatusMode.ANY;
+            } else {
+                this.statusMode = StatusMode.EQUALS;
+                this.status = status;
+            }
+            return this;
+        }
+
+        /** Estado vacío, "unknown" o "desconocido". */
+        public Query unknownStatus() {
+            this.statusMode = StatusMode.UNKNOWN;
+            return this;
+        }
+
+        /** Solo favoritos. */
+        public Query favoritesOnly(boolean favoritesOnly) {
+            this.favoritesOnly = favoritesOnly;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package org.GaizkaFrost.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Agrupa las peticiones de miniaturas que llegan casi a la vez (p. ej. todas
+ * las tarjetas de una pantalla) en una sola llamada a
+ * {@link HarryPotterAPI#fetchThumbnails(List)}.
+ *
+ * <p>
+ * La primera petición abre una ventana corta
+ * ({@code anuario.imageBatch.windowMs}, 15 ms por defecto); al cerrarse, todo
+ * lo acumulado se descarga en bloques de como mucho {@code MAX_BATCH} ids.
+ * Cada futuro se completa con los bytes de la miniatura, o con null si el
+ * servidor no la tenía o la petición falló, en cuyo caso el llamador debe
+ * pedir la imagen por separado.
+ * </p>
+ *
+ * @author Gaizka
+ * @author Xiker
+ * @author Diego
+ */
+final class ThumbnailBatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(ThumbnailBatcher.class);
+
+    private static final long WINDOW_MS = Long.getLong("anuario.imageBatch.windowMs", 15);
+    private static final int MAX_BATCH = Math.min(64, HarryPotterAPI.MAX_THUMBNAILS_PER_REQUEST);
+
+    private final Map<String, CompletableFuture<byte[]>> pendientes = new LinkedHashMap<>();
+    private boolean programado = false;
+
+    /**
+     * Pide la miniatura de un personaje; se descargará junto con las demás
+     * pedidas en la misma ventana.
+     */
+    CompletableFuture<byte[]> request(String id) {
+        synchronized (this) {
+            CompletableFuture<byte[]> existente = pendientes.get(id);
+            if (existente != null) {
+                return existente;
+            }
+            CompletableFuture<byte[]> futuro = new CompletableFuture<>();
+            pendientes.put(id, futuro);
+            if (!programado) {
+                programado = true;
+                BackgroundTasks.run(BackgroundTasks.Workload.NETWORK, this::descargarPendientes)
+                        .whenComplete((v, ex) -> {
+                            if (ex != null) {
+                                // Pool saturado o cerrado: que cada imagen se pida sola
+                                fallarPendientes();
+                            }
+                        });
+            }
+            return futuro;
+        }
+    }
+
+    // ==========================================
+    // MÉTODOS AUXILIARES PRIVADOS (HELPERS)
+    // ==========================================
+
+    private void descargarPendientes() {
+        try {
+            Thread.sleep(WINDOW_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fallarPendientes();
+            return;
+        }
+
+        while (true) {
+            Map<String, CompletableFuture<byte[]>> lote = new LinkedHashMap<>();
+            synchronized (this) {
+                Iterator<Map.Entry<String, CompletableFuture<byte[]>>> it = pendientes.entrySet().iterator();
+                while (it.hasNext() && lote.size() < MAX_BATCH) {
+                    Map.Entry<String, CompletableFuture<byte[]>> entry = it.next();
+                    lote.put(entry.getKey(), entry.getValue());
+                    it.remove();
+                }
+                if (lote.isEmpty()) {
+                    programado = false;
+                    return;
+                }
+            }
+
+            Map<String, byte[]> miniaturas;
+            try {
+                miniaturas = HarryPotterAPI.fetchThumbnails(new ArrayList<>(lote.keySet()));
+            } catch (Exception e) {
+                logger.debug("Bulk thumbnail request failed, falling back to single requests: {}", e.toString());
+                miniaturas = Map.of();
+            }
+            for (Map.Entry<String, CompletableFuture<byte[]>> entry : lote.entrySet()) {
+                entry.getValue().complete(miniaturas.get(entry.getKey()));
+            }
+        }
+    }
+
+    private void fallarPendientes() {
+        List<CompletableFuture<byte[]>> futuros;
+        synchronized (this) {
+            futuros = new ArrayList<>(pendientes.values());
+            pendientes.clear();
+            programado = false;
+        }
+        for (CompletableFuture<byte[]> futuro : futuros) {
+            futuro.complete(null);
+        }
+    }
+}